@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Result;
+import hudson.model.Run;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A history held in primitive arrays, numbered from 1 with no gaps, for testing and simulating policies against
+ * large numbers of builds without a Jenkins instance.
+ */
+public class ArrayBuildHistory extends BuildHistory {
+
+    private long[] timestamps;
+    private byte[] results;
+    private final BitSet kept = new BitSet();
+    private final KeptBuildIndex keptBuilds = new KeptBuildIndex();
+    private final PluginKeptBuilds pluginKeptBuilds = new PluginKeptBuilds();
+    private final Map<Integer, Long> expiries = new HashMap<Integer, Long>();
+    private final Map<Integer, Map<String, String>> parameters = new HashMap<Integer, Map<String, String>>();
+    private final Map<Integer, Long> durations = new HashMap<Integer, Long>();
+    private int size;
+
+    public ArrayBuildHistory() {
+        this(16);
+    }
+
+    public ArrayBuildHistory(final int capacity) {
+        timestamps = new long[capacity + 1];
+        results = new byte[capacity + 1];
+    }
+
+    public BuildRecord add(final long timestamp, final Result result) {
+        return add(timestamp, result, false);
+    }
+
+    public BuildRecord add(final long timestamp, final Result result, final boolean keepLog) {
+        if (size + 1 == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, timestamps.length * 2);
+            results = Arrays.copyOf(results, results.length * 2);
+        }
+        size++;
+        timestamps[size] = timestamp;
+        results[size] = (byte) BuildRecord.toOrdinal(result);
+        if (keepLog) {
+            kept.set(size);
+            keptBuilds.update(size, timestamp, true);
+        }
+        return record(size);
+    }
+
+    /**
+     * Completes a build added with a null result, for simulating builds that finish out of order.
+     */
+    public BuildRecord setResult(final int number, final Result result) {
+        results[number] = (byte) BuildRecord.toOrdinal(result);
+        return record(number);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isKeepLog(final int number) {
+        return kept.get(number);
+    }
+
+    public int getKeptCount() {
+        return kept.cardinality();
+    }
+
+    public int[] getKeptNumbers() {
+        return kept.stream().toArray();
+    }
+
+    @Override
+    public BuildRecord getLastBuild() {
+        return size == 0 ? null : record(size);
+    }
+
+    @Override
+    public BuildRecord getBuild(final int number) {
+        if ((number < 1) || (number > size)) return null;
+        accessed();
+        return record(number);
+    }
+
+    @Override
+    public BuildRecord getPreviousBuild(final BuildRecord build) {
+        return getBuild(build.getNumber() - 1);
+    }
+
+    @Override
+    public KeptBuildIndex getKeptBuilds() {
+        return keptBuilds;
+    }
+
+    @Override
+    public PluginKeptBuilds getPluginKeptBuilds() {
+        return pluginKeptBuilds;
+    }
+
+    /**
+     * Builds added as kept were kept by a user, builds kept through here were kept by the plugin.
+     */
+    @Override
+    public void keepLog(final BuildRecord build, final boolean keep) {
+        final int number = build.getNumber();
+        if (keep && !kept.get(number)) keptBuild();
+        if (kept.get(number) != keep) pluginKeptBuilds.update(number, keep);
+        kept.set(number, keep);
+        keptBuilds.update(number, timestamps[number], keep);
+    }
+
+    @Override
+    public void expireAt(final BuildRecord build, final long time) {
+        expiries.put(build.getNumber(), time);
+    }
+
+    /**
+     * @return when the build stops being kept, or 0 if it never does
+     */
+    public long getExpiry(final int number) {
+        final Long time = expiries.get(number);
+        return time == null ? 0 : time;
+    }
+
+    public void setParameter(final int number, final String name, final String value) {
+        Map<String, String> values = parameters.get(number);
+        if (values == null) {
+            values = new HashMap<String, String>();
+            parameters.put(number, values);
+        }
+        values.put(name, value);
+    }
+
+    @Override
+    public String getParameter(final BuildRecord build, final String name) {
+        final Map<String, String> values = parameters.get(build.getNumber());
+        return values == null ? null : values.get(name);
+    }
+
+    public void setDuration(final int number, final long duration) {
+        durations.put(number, duration);
+    }
+
+    @Override
+    public long getDuration(final BuildRecord build) {
+        final Long duration = durations.get(build.getNumber());
+        return duration == null ? 0 : duration;
+    }
+
+    @Override
+    public Run<?, ?> getRun(final BuildRecord build) {
+        return null;
+    }
+
+    private BuildRecord record(final int number) {
+        return new BuildRecord(number, timestamps[number], BuildRecord.fromOrdinal(results[number]), kept.get(number));
+    }
+
+}
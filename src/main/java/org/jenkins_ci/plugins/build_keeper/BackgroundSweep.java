@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.BuildListener;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies each job's policy, a batch of builds per job each cycle, to the builds that completed before the policy
+ * was first seen or last changed, such as those from before the plugin was installed. Builds that complete later are
+ * evaluated as they complete, so once a job's {@link SweepWatermark} reaches its last build the job costs nothing
+ * more. Jobs that are building are left for the next cycle, and the {@link SweepThrottle} backs off when the
+ * controller is loaded or reading builds is slow.
+ *
+ * The batches of a job are replayed through one {@link SweepHistory}, kept from cycle to cycle until the job is swept,
+ * so that a policy folding its state forward from build to build seeds it once for the sweep rather than from the
+ * live state of the builds that have completed since, and leaves that state as it was.
+ */
+@Extension
+public class BackgroundSweep extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(BackgroundSweep.class.getName());
+    private static final String PREFIX = BackgroundSweep.class.getName();
+    private static final long RECURRENCE = TimeUnit.MINUTES.toMillis(SystemProperties.getInteger(PREFIX + ".recurrenceMinutes", 15));
+    private static final int BATCH = SystemProperties.getInteger(PREFIX + ".batch", 100);
+    private static final int MAX_LOAD_PERCENT = SystemProperties.getInteger(PREFIX + ".maxLoadPercent", 75);
+    private static final long TARGET_LATENCY = TimeUnit.MILLISECONDS.toNanos(SystemProperties.getInteger(PREFIX + ".targetLatencyMillis", 20));
+
+    private final Map<Job<?, ?>, SweepHistory> histories = new HashMap<Job<?, ?>, SweepHistory>();
+
+    public BackgroundSweep() {
+        super("Build keeper background sweep");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RECURRENCE;
+    }
+
+    @Override
+    protected void execute(final TaskListener listener) throws IOException, InterruptedException {
+        if (BATCH <= 0) return;
+        final SweepThrottle throttle = new SweepThrottle(BATCH, MAX_LOAD_PERCENT / 100.0, TARGET_LATENCY);
+        final BuildListener buildListener = EvaluationQueue.listener();
+        int jobs = 0;
+        int evaluated = 0;
+        int behind = 0;
+        boolean finished = true;
+        final Set<Job<?, ?>> seen = new HashSet<Job<?, ?>>();
+        for (Job<?, ?> job : Jenkins.get().getAllItems(Job.class)) {
+            if (throttle.isOverloaded(load())) {
+                listener.getLogger().println("Controller is loaded, stopping until the next cycle");
+                finished = false;
+                break;
+            }
+            seen.add(job);
+            final BuildKeeper keeper = BuildKeeper.of(job);
+            if ((keeper == null) || (keeper.getPolicy() == null)) continue;
+            try {
+                final SweepWatermark watermark = SweepWatermark.of(job);
+                final Run<?, ?> first = job.getFirstBuild();
+                final Run<?, ?> last = job.getLastCompletedBuild();
+                final boolean reset = watermark.reset(Jenkins.XSTREAM2.toXML(keeper.getPolicy()).hashCode(),
+                                                      first == null ? 1 : first.getNumber(), last == null ? 0 : last.getNumber());
+                final int next = watermark.getNext();
+                if (reset) histories.remove(job);
+                if (!watermark.isSwept() && !job.isBuilding()) {
+                    SweepHistory history = histories.get(job);
+                    if (history == null) {
+                        history = new SweepHistory(new RunBuildHistory(job), false);
+                        histories.put(job, history);
+                    }
+                    final int count = sweep(keeper.getPolicy(), history, watermark, throttle, buildListener);
+                    if ((count > 0) && (keeper.getMaxKept() > 0)) release(history, keeper.getMaxKept());
+                    if (count > 0) jobs++;
+                    evaluated += count;
+                }
+                if (watermark.isSwept()) {
+                    histories.remove(job);
+                } else {
+                    behind++;
+                }
+                if (reset || (watermark.getNext() != next)) watermark.save();
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Failed to sweep " + job.getFullName(), ioe);
+            } catch (RuntimeException re) {
+                LOGGER.log(Level.WARNING, "Failed to sweep " + job.getFullName(), re);
+            }
+        }
+        // jobs that have gone
+        if (finished) histories.keySet().retainAll(seen);
+        listener.getLogger().println("Evaluated " + evaluated + " builds of " + jobs + " jobs, " + behind + " jobs still to sweep");
+    }
+
+    /**
+     * Apply the policy to the next batch of builds after the watermark, stopping at the first build that has not
+     * completed, and move the watermark past them.
+     *
+     * @return the number of builds evaluated
+     */
+    static int sweep(final BuildKeeperPolicy policy, final SweepHistory history, final SweepWatermark watermark,
+                     final SweepThrottle throttle, final BuildListener listener) throws IOException, InterruptedException {
+        final int end = Math.min(watermark.getLast(), watermark.getNext() + throttle.getBatch() - 1);
+        int evaluated = 0;
+        int number = watermark.getNext();
+        for (; number <= end; number++) {
+            final long started = System.nanoTime();
+            final BuildRecord build = history.getBuild(number);
+            throttle.read(System.nanoTime() - started);
+            if (build == null) continue;
+            if (build.getResult() == null) break;
+            final ReentrantLock lock = PolicyLocks.get().lock(history.getJobKey());
+            try {
+                policy.apply(history, build, listener);
+            } finally {
+                lock.unlock();
+            }
+            evaluated++;
+            final long pause = throttle.getPause();
+            if (pause > 0) TimeUnit.NANOSECONDS.sleep(pause);
+        }
+        watermark.advance(number);
+        throttle.batchDone();
+        return evaluated;
+    }
+
+    private static void release(final SweepHistory history, final int maxKept) throws IOException {
+        final ReentrantLock lock = PolicyLocks.get().lock(history.getJobKey());
+        try {
+            history.getPluginKeptBuilds().release(history, maxKept);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the load average per processor, or a negative number where the platform does not report it
+     */
+    private static double load() {
+        return ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage()
+               / Runtime.getRuntime().availableProcessors();
+    }
+
+}
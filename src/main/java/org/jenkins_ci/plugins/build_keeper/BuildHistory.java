@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.Run;
+
+import java.io.IOException;
+
+/**
+ * Read only view of the builds of a job, as seen by the policies, plus the one change a policy makes: marking a
+ * build as kept.
+ *
+ * {@link RunBuildHistory} is the view of a real job; {@link ArrayBuildHistory} holds the builds in memory for tests
+ * and simulations.
+ */
+public abstract class BuildHistory {
+
+    private long accesses;
+    private long keeps;
+
+    public static BuildHistory of(final Run<?, ?> build) {
+        return new RunBuildHistory(build);
+    }
+
+    public abstract BuildRecord getLastBuild();
+
+    /**
+     * @return the build with the number, or null if there is no such build
+     */
+    public abstract BuildRecord getBuild(int number);
+
+    /**
+     * @return the build before this one, or null if this is the first build
+     */
+    public abstract BuildRecord getPreviousBuild(BuildRecord build);
+
+    public abstract KeptBuildIndex getKeptBuilds();
+
+    /**
+     * @return the builds kept through this history, rather than by a user
+     */
+    public abstract PluginKeptBuilds getPluginKeptBuilds();
+
+    public abstract void keepLog(BuildRecord build, boolean keep) throws IOException;
+
+    /**
+     * Stop keeping a build kept through this history once the time comes, unless it has been kept by a user since.
+     */
+    public void expireAt(final BuildRecord build, final long time) {
+    }
+
+    /**
+     * @return the build itself, or null if the history has no {@link Run} behind it
+     */
+    public abstract Run<?, ?> getRun(BuildRecord build);
+
+    /**
+     * @return the value of the build's parameter as a string, or null if the build has no such parameter
+     */
+    public String getParameter(final BuildRecord build, final String name) {
+        final Run<?, ?> run = getRun(build);
+        final ParametersAction parameters = run == null ? null : run.getAction(ParametersAction.class);
+        final ParameterValue value = parameters == null ? null : parameters.getParameter(name);
+        return (value == null) || (value.getValue() == null) ? null : value.getValue().toString();
+    }
+
+    /**
+     * @return how long the build took in milliseconds, or has taken so far if it is still finishing, 0 if not known
+     */
+    public long getDuration(final BuildRecord build) {
+        final Run<?, ?> run = getRun(build);
+        if (run == null) return 0;
+        if ((run.getDuration() > 0) || !run.isBuilding()) return run.getDuration();
+        return System.currentTimeMillis() - run.getStartTimeInMillis();
+    }
+
+    /**
+     * @return what identifies the builds behind this history, for policies that keep state between builds
+     */
+    public Object getKey() {
+        return this;
+    }
+
+    /**
+     * @return what identifies the state a policy folds forward from one build to the next, such as a failure streak,
+     *         which is that of the builds unless they are being replayed behind the builds that have completed since
+     */
+    public Object getStateKey() {
+        return getKey();
+    }
+
+    /**
+     * @return the number of builds looked up through this history
+     */
+    public long getAccessCount() {
+        return accesses;
+    }
+
+    protected void accessed() {
+        accesses++;
+    }
+
+    /**
+     * @return the number of builds, of any age, that were not kept and have been kept through this history
+     */
+    public long getKeepCount() {
+        return keeps;
+    }
+
+    protected void keptBuild() {
+        keeps++;
+    }
+
+}
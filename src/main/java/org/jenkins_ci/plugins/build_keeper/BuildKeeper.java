@@ -30,19 +30,36 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.model.Hudson;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
 import hudson.tasks.BuildWrapper;
 import hudson.tasks.BuildWrapperDescriptor;
 import jenkins.model.Jenkins;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class BuildKeeper extends BuildWrapper {
 
+    private static final Logger LOGGER = Logger.getLogger(BuildKeeper.class.getName());
+    private static final Map<Job<?, ?>, SharedPolicy> SHARED = Collections.synchronizedMap(new WeakHashMap<Job<?, ?>, SharedPolicy>());
+
     private int buildPeriod;
     private boolean dontKeepFailed;
     private boolean countFromLastKept;
     private BuildKeeperPolicy policy;
+    private boolean evaluateAsynchronously;
+    private int maxKept;
+    private transient boolean appliedOnCompletion;
 
     @DataBoundConstructor
     public BuildKeeper(final BuildKeeperPolicy policy) {
@@ -53,6 +70,27 @@ public class BuildKeeper extends BuildWrapper {
         return policy;
     }
 
+    public boolean isEvaluateAsynchronously() {
+        return evaluateAsynchronously;
+    }
+
+    @DataBoundSetter
+    public void setEvaluateAsynchronously(final boolean evaluateAsynchronously) {
+        this.evaluateAsynchronously = evaluateAsynchronously;
+    }
+
+    public int getMaxKept() {
+        return maxKept;
+    }
+
+    /**
+     * @param maxKept the most builds the policy may keep before the oldest it kept are released, 0 for no limit
+     */
+    @DataBoundSetter
+    public void setMaxKept(final int maxKept) {
+        this.maxKept = Math.max(0, maxKept);
+    }
+
     @Override
     public BuildKeeperDescriptor getDescriptor() {
         return Jenkins.get().getDescriptorByType(BuildKeeperDescriptor.class);
@@ -67,11 +105,141 @@ public class BuildKeeper extends BuildWrapper {
         @Override
         public boolean tearDown(final AbstractBuild build, final BuildListener listener) throws IOException, InterruptedException {
             if (build == null) return true;
-            policy.apply(build, listener);
+            completed(build, listener);
             return true;
         }
     }
 
+    /**
+     * @return the build keeper of the job, or the default for its folder if it has none, or null if neither
+     */
+    public static BuildKeeper of(final Job<?, ?> job) {
+        return DefaultPolicies.get().getKeeper(job);
+    }
+
+    /**
+     * @return true if this build keeper is applied when a build completes, rather than by the job's build wrapper as
+     * the build tears down, because it comes from a job property or the {@link DefaultPolicies}
+     */
+    public boolean isAppliedOnCompletion() {
+        return appliedOnCompletion;
+    }
+
+    BuildKeeper appliedOnCompletion() {
+        appliedOnCompletion = true;
+        return this;
+    }
+
+    /**
+     * @return the job's instance of a policy with the same configuration, so that what a policy carries from one build
+     * to the next survives a build keeper that is created afresh for each build, as by the buildKeeper step, whose
+     * policy is saved with the build, or by a Pipeline that sets its job properties as it runs. A policy that replaces
+     * one with a different configuration takes over its state, including the builds it holds for an earlier build.
+     */
+    static BuildKeeperPolicy shared(final Job<?, ?> job, final BuildKeeperPolicy policy) {
+        synchronized (SHARED) {
+            final SharedPolicy shared = SHARED.get(job);
+            // a build keeper saved with the job passes the same instance every time, so skip the serialization
+            if ((shared != null) && (shared.policy == policy)) return policy;
+        }
+        final String config = Jenkins.XSTREAM2.toXML(policy);
+        synchronized (SHARED) {
+            final SharedPolicy shared = SHARED.get(job);
+            if (shared != null) {
+                if (shared.config.equals(config)) return shared.policy;
+                policy.takeOver(shared.policy);
+            }
+            SHARED.put(job, new SharedPolicy(config, policy));
+            return policy;
+        }
+    }
+
+    private BuildKeeper withPolicy(final BuildKeeperPolicy policy) {
+        if (policy == this.policy) return this;
+        final BuildKeeper keeper = new BuildKeeper(policy);
+        keeper.evaluateAsynchronously = evaluateAsynchronously;
+        keeper.maxKept = maxKept;
+        keeper.appliedOnCompletion = appliedOnCompletion;
+        return keeper;
+    }
+
+    private static class SharedPolicy {
+
+        private final String config;
+        private final BuildKeeperPolicy policy;
+
+        SharedPolicy(final String config, final BuildKeeperPolicy policy) {
+            this.config = config;
+            this.policy = policy;
+        }
+
+    }
+
+    void completed(final Run<?, ?> build, final BuildListener listener) throws IOException, InterruptedException {
+        final BuildRecordFile records = BuildRecordFile.of(build.getParent());
+        if (records != null) records.record(build);
+        if (evaluateAsynchronously) {
+            EvaluationQueue.get().submit(build.getParent(), new PolicyEvaluation(this, build));
+        } else {
+            evaluate(build, listener);
+        }
+    }
+
+    void evaluate(final Run<?, ?> build, final BuildListener listener) throws IOException {
+        final BuildHistory history = BuildHistory.of(build);
+        final ReentrantLock lock = PolicyLocks.get().lock(history.getKey());
+        try {
+            PolicyMetrics.get().apply(policy, history, build, listener);
+            if (maxKept > 0) history.getPluginKeptBuilds().release(history, maxKept);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class PolicyEvaluation implements Runnable {
+
+        private final BuildKeeper keeper;
+        private final Run<?, ?> build;
+
+        PolicyEvaluation(final BuildKeeper keeper, final Run<?, ?> build) {
+            this.keeper = keeper;
+            this.build = build;
+        }
+
+        public void run() {
+            try {
+                keeper.evaluate(build, EvaluationQueue.listener());
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Failed to apply build keeper policy to " + build.getFullDisplayName(), ioe);
+            }
+        }
+
+    }
+
+    /**
+     * Applies the build keepers that have no build wrapper to tear down with the build, which are those from a job
+     * property, a folder default, or the buildKeeper step of a Pipeline.
+     */
+    @Extension
+    public static class CompletedRunListener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(final Run<?, ?> run, final TaskListener listener) {
+            final BuildKeeperAction action = run.getAction(BuildKeeperAction.class);
+            final BuildKeeper keeper = action != null ? action.toBuildKeeper() : of(run.getParent());
+            if ((keeper == null) || (keeper.getPolicy() == null) || !keeper.isAppliedOnCompletion()) return;
+            try {
+                keeper.withPolicy(shared(run.getParent(), keeper.getPolicy()))
+                      .completed(run, listener instanceof BuildListener ? (BuildListener) listener : EvaluationQueue.listener());
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Failed to apply build keeper policy to " + run.getFullDisplayName(), ioe);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
     @Extension
     public static class BuildKeeperDescriptor extends BuildWrapperDescriptor {
 
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.InvisibleAction;
+
+/**
+ * The policy given to the buildKeeper Pipeline step, saved with the build and applied when it completes, in place of
+ * the job's own build keeper.
+ */
+public class BuildKeeperAction extends InvisibleAction {
+
+    private final BuildKeeperPolicy policy;
+    private final int maxKept;
+
+    public BuildKeeperAction(final BuildKeeperPolicy policy, final int maxKept) {
+        this.policy = policy;
+        this.maxKept = maxKept;
+    }
+
+    public BuildKeeperPolicy getPolicy() {
+        return policy;
+    }
+
+    public int getMaxKept() {
+        return maxKept;
+    }
+
+    BuildKeeper toBuildKeeper() {
+        final BuildKeeper keeper = new BuildKeeper(policy);
+        keeper.setMaxKept(maxKept);
+        return keeper.appliedOnCompletion();
+    }
+
+}
@@ -26,11 +26,13 @@ package org.jenkins_ci.plugins.build_keeper;
 
 import hudson.DescriptorExtensionList;
 import hudson.ExtensionPoint;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.Describable;
 import hudson.model.Descriptor;
 import hudson.model.Hudson;
+import hudson.model.Run;
 import jenkins.model.Jenkins;
 
 import java.io.IOException;
@@ -41,7 +43,67 @@ public abstract class BuildKeeperPolicy implements Describable<BuildKeeperPolicy
         return Jenkins.get().<BuildKeeperPolicy, BuildKeeperPolicyDescriptor>getDescriptorList(BuildKeeperPolicy.class);
     }
 
-    public abstract void apply(AbstractBuild build, BuildListener listener) throws IOException;
+    /**
+     * Subclasses override this, {@link #applyToRun(Run, BuildListener)} to handle builds of any kind of job, or
+     * {@link #apply(BuildHistory, BuildRecord, BuildListener)} if the policy can decide from the history alone.
+     */
+    public void apply(final AbstractBuild build, final BuildListener listener) throws IOException {
+        if (!overridesHistoryApply())
+            throw new AbstractMethodError(getClass().getName() + " must override one of the apply methods");
+        apply(BuildHistory.of(build), BuildRecord.of(build), listener);
+    }
+
+    /**
+     * Apply the policy to a build of any kind of job, such as a Pipeline. Policies that only override
+     * {@link #apply(AbstractBuild, BuildListener)} leave other builds alone.
+     */
+    public void applyToRun(final Run<?, ?> build, final BuildListener listener) throws IOException {
+        if (build instanceof AbstractBuild) {
+            apply((AbstractBuild) build, listener);
+        } else if (overridesHistoryApply()) {
+            apply(BuildHistory.of(build), BuildRecord.of(build), listener);
+        }
+    }
+
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
+        final Run<?, ?> run = history.getRun(build);
+        if (run != null)
+            applyToRun(run, listener);
+    }
+
+    /**
+     * Rough relative cost of one evaluation, so that {@link CompositePolicy} can try the cheap policies first: 0 for
+     * arithmetic on the build itself, 10 for the kept build index, 100 for walking back through previous builds and
+     * 1000 for running code that can touch the workspace.
+     */
+    public int getEvaluationCost() {
+        return 100;
+    }
+
+    /**
+     * @return true if the policy only reads and keeps builds through the history it is given
+     */
+    public boolean isHistoryAware() {
+        return overridesHistoryApply();
+    }
+
+    /**
+     * @return true if the policy can be replayed over past builds, for a preview or a dry run, without side effects
+     */
+    public boolean isSimulable() {
+        return isHistoryAware();
+    }
+
+    /**
+     * Take over what the job's previous policy carried from one build to the next, when this policy replaces it
+     * because the job's configuration changed, so that builds it still holds for an earlier build are not lost.
+     */
+    void takeOver(final BuildKeeperPolicy previous) {
+    }
+
+    private boolean overridesHistoryApply() {
+        return Util.isOverridden(BuildKeeperPolicy.class, getClass(), "apply", BuildHistory.class, BuildRecord.class, BuildListener.class);
+    }
 
     public BuildKeeperPolicyDescriptor getDescriptor() {
         return (BuildKeeperPolicyDescriptor)Jenkins.get().getDescriptor(getClass());
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Job;
+import hudson.model.JobProperty;
+import hudson.model.JobPropertyDescriptor;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * The build keeper of a job that cannot have build wrappers, such as a Pipeline, applied as each build completes.
+ */
+public class BuildKeeperProperty extends JobProperty<Job<?, ?>> {
+
+    private final BuildKeeperPolicy policy;
+    private boolean evaluateAsynchronously;
+    private int maxKept;
+
+    @DataBoundConstructor
+    public BuildKeeperProperty(final BuildKeeperPolicy policy) {
+        this.policy = policy;
+    }
+
+    public BuildKeeperPolicy getPolicy() {
+        return policy;
+    }
+
+    public boolean isEvaluateAsynchronously() {
+        return evaluateAsynchronously;
+    }
+
+    @DataBoundSetter
+    public void setEvaluateAsynchronously(final boolean evaluateAsynchronously) {
+        this.evaluateAsynchronously = evaluateAsynchronously;
+    }
+
+    public int getMaxKept() {
+        return maxKept;
+    }
+
+    @DataBoundSetter
+    public void setMaxKept(final int maxKept) {
+        this.maxKept = Math.max(0, maxKept);
+    }
+
+    BuildKeeper toBuildKeeper() {
+        final BuildKeeper keeper = new BuildKeeper(policy);
+        keeper.setEvaluateAsynchronously(evaluateAsynchronously);
+        keeper.setMaxKept(maxKept);
+        return keeper.appliedOnCompletion();
+    }
+
+    @Extension
+    public static class BuildKeeperPropertyDescriptor extends JobPropertyDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.buildKeeperProperty_displayName();
+        }
+
+        /**
+         * Jobs with build wrappers use {@link BuildKeeper} instead.
+         */
+        @Override
+        public boolean isApplicable(final Class<? extends Job> jobType) {
+            return !BuildableItemWithBuildWrappers.class.isAssignableFrom(jobType);
+        }
+
+        public BuildKeeperPolicy.BuildKeeperPolicyDescriptor getDefaultPolicy() {
+            return Jenkins.get().getDescriptorByType(ByDayPolicy.ByDayPolicyDescriptor.class);
+        }
+
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * {@code buildKeeper policy: ...} in a Pipeline: the policy is applied to the build once it completes, with its
+ * final result, instead of a script walking back through previous builds to keep them.
+ */
+public class BuildKeeperStep extends Step {
+
+    private final BuildKeeperPolicy policy;
+    private int maxKept;
+
+    @DataBoundConstructor
+    public BuildKeeperStep(final BuildKeeperPolicy policy) {
+        this.policy = policy;
+    }
+
+    public BuildKeeperPolicy getPolicy() {
+        return policy;
+    }
+
+    public int getMaxKept() {
+        return maxKept;
+    }
+
+    @DataBoundSetter
+    public void setMaxKept(final int maxKept) {
+        this.maxKept = Math.max(0, maxKept);
+    }
+
+    @Override
+    public StepExecution start(final StepContext context) {
+        return new Execution(context, new BuildKeeperAction(policy, maxKept));
+    }
+
+    private static class Execution extends SynchronousStepExecution<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient BuildKeeperAction action;
+
+        Execution(final StepContext context, final BuildKeeperAction action) {
+            super(context);
+            this.action = action;
+        }
+
+        @Override
+        protected Void run() throws Exception {
+            getContext().get(Run.class).replaceAction(action);
+            return null;
+        }
+
+    }
+
+    @Extension
+    public static class BuildKeeperStepDescriptor extends StepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "buildKeeper";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.buildKeeperStep_displayName();
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Collections.singleton(Run.class);
+        }
+
+        public BuildKeeperPolicy.BuildKeeperPolicyDescriptor getDefaultPolicy() {
+            return Jenkins.get().getDescriptorByType(ByDayPolicy.ByDayPolicyDescriptor.class);
+        }
+
+    }
+
+}
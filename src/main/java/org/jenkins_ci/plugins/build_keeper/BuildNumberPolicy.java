@@ -25,7 +25,6 @@
 package org.jenkins_ci.plugins.build_keeper;
 
 import hudson.Extension;
-import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import org.kohsuke.stapler.DataBoundConstructor;
 
@@ -39,12 +38,17 @@ public class BuildNumberPolicy extends PeriodAndFailedPolicy {
     }
 
     @Override
-    public void apply(final AbstractBuild build, final BuildListener listener) throws IOException {
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
         if ((build.getNumber() -1) % getBuildPeriod() == 0) {
-            keep(build);
+            keep(history, build);
         }
     }
 
+    @Override
+    public int getEvaluationCost() {
+        return 0;
+    }
+
     @Extension
     public static class BuildNumberPolicyDescriptor extends PeriodAndFailedPolicyDescriptor {
 
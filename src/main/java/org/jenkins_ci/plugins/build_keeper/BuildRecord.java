@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Result;
+import hudson.model.Run;
+
+/**
+ * The few fields of a build that the policies need to look at when walking back through the history.
+ */
+public final class BuildRecord {
+
+    private static final Result[] RESULTS = {Result.SUCCESS, Result.UNSTABLE, Result.FAILURE, Result.NOT_BUILT, Result.ABORTED};
+
+    private final int number;
+    private final long timestamp;
+    private final Result result;
+    private final boolean keepLog;
+
+    public BuildRecord(final int number, final long timestamp, final Result result, final boolean keepLog) {
+        this.number = number;
+        this.timestamp = timestamp;
+        this.result = result;
+        this.keepLog = keepLog;
+    }
+
+    public static BuildRecord of(final Run<?, ?> run) {
+        return new BuildRecord(run.getNumber(), run.getTimeInMillis(), run.getResult(), run.isKeepLog());
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Result getResult() {
+        return result;
+    }
+
+    public boolean isKeepLog() {
+        return keepLog;
+    }
+
+    static int toOrdinal(final Result result) {
+        return result == null ? -1 : result.ordinal;
+    }
+
+    static Result fromOrdinal(final int ordinal) {
+        for (Result result : RESULTS) {
+            if (result.ordinal == ordinal) return result;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + number + " " + result + (keepLog ? " kept" : "");
+    }
+
+}
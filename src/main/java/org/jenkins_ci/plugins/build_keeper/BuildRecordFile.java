@@ -0,0 +1,425 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fixed width file in the job directory holding a {@link BuildRecord} for every build number, read and written
+ * through a memory mapped buffer.
+ *
+ * Each slot carries a checksum that is written last, so a slot torn by a crash reads as unknown and the caller falls
+ * back to loading the {@link Run}. Changes are only seen while the file is open, so when it is opened again the slots
+ * are reconciled with the build directories, and a build whose build.xml changed since the file was last closed, or
+ * since it was opened if it was never closed, reads as unknown until it is recorded again. The channel is closed once
+ * the file is mapped, so an open file holds no descriptor.
+ */
+public class BuildRecordFile {
+
+    static final String FILE_NAME = "build-keeper-records.bin";
+
+    static final int UNKNOWN = 0;
+    static final int ABSENT = 1;
+    static final int PRESENT = 2;
+
+    private static final Logger LOGGER = Logger.getLogger(BuildRecordFile.class.getName());
+    private static final Map<Job<?, ?>, BuildRecordFile> FILES =
+                                                    Collections.synchronizedMap(new WeakHashMap<Job<?, ?>, BuildRecordFile>());
+    /** One lock per job, so opening a file only holds up callers for the same job. */
+    private static final Map<Job<?, ?>, Object> OPENING = new WeakHashMap<Job<?, ?>, Object>();
+
+    private static final int MAGIC = 0x424b5246;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 20;
+    private static final int CHUNK_SIZE = RECORD_SIZE * 4096;
+
+    private static final byte STATE_CLEAN = 0;
+    private static final byte STATE_OPEN = 1;
+
+    private static final byte FLAG_PRESENT = 1;
+    private static final byte FLAG_KEEP_LOG = 2;
+    private static final byte FLAG_KEPT_BY_PLUGIN = 4;
+    private static final byte FLAG_STALE = 8;
+    /** Modification times can be this coarse, so anything changed within it of the file closing is also stale. */
+    private static final long MTIME_RESOLUTION = 2000;
+
+    private final File file;
+    private final File buildDir;
+    private MappedByteBuffer buffer;
+    private int base;
+    private int highest;
+
+    BuildRecordFile(final File file, final File buildDir, final int nextBuildNumber) throws IOException {
+        this.file = file;
+        this.buildDir = buildDir;
+        final boolean valid;
+        final long size;
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                     StandardOpenOption.WRITE);
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            valid = (channel.read(header, 0) == HEADER_SIZE)
+                        && (header.getInt(0) == MAGIC) && (header.getInt(4) == VERSION) && (header.getInt(8) > 0);
+            if (!valid) channel.truncate(0);
+            size = channel.size();
+        } finally {
+            channel.close();
+        }
+        map(Math.max(size, HEADER_SIZE + CHUNK_SIZE));
+        if (valid) {
+            base = buffer.getInt(8);
+            highest = findHighest();
+            if (buffer.get(12) != STATE_CLEAN)
+                LOGGER.log(Level.INFO, "Reconciling {0} after an unclean shutdown", file);
+            reconcile(buffer.getLong(16) - MTIME_RESOLUTION);
+        } else {
+            base = lowestBuildNumber(nextBuildNumber);
+            highest = base - 1;
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, base);
+        }
+        buffer.put(12, STATE_OPEN);
+        buffer.putLong(16, System.currentTimeMillis());
+        buffer.force();
+    }
+
+    public static BuildRecordFile of(final Job<?, ?> job) {
+        BuildRecordFile records = FILES.get(job);
+        if (records != null) return records;
+        Object lock;
+        synchronized (OPENING) {
+            lock = OPENING.get(job);
+            if (lock == null) {
+                lock = new Object();
+                OPENING.put(job, lock);
+            }
+        }
+        // mapping and reconciling reads the build directories, so it is done outside the lock on FILES
+        synchronized (lock) {
+            records = FILES.get(job);
+            if (records == null) {
+                try {
+                    records = new BuildRecordFile(new File(job.getRootDir(), FILE_NAME), job.getBuildDir(),
+                                                  job.getNextBuildNumber());
+                    FILES.put(job, records);
+                } catch (IOException ioe) {
+                    LOGGER.log(Level.WARNING, "Unable to open build records for " + job.getFullName(), ioe);
+                }
+            }
+            return records;
+        }
+    }
+
+    static BuildRecordFile peek(final Job<?, ?> job) {
+        return FILES.get(job);
+    }
+
+    static void close(final Job<?, ?> job) {
+        final BuildRecordFile records = FILES.remove(job);
+        if (records != null) records.close();
+    }
+
+    @Terminator
+    public static void closeAll() {
+        final List<BuildRecordFile> open;
+        synchronized (FILES) {
+            open = new ArrayList<BuildRecordFile>(FILES.values());
+            FILES.clear();
+        }
+        for (BuildRecordFile records : open)
+            records.close();
+    }
+
+    public synchronized void record(final Run<?, ?> run) {
+        write(run.getNumber(), run.getTimeInMillis(), run.getResult(), run.isKeepLog());
+    }
+
+    public synchronized void write(final int number, final long timestamp, final Result result, final boolean keepLog) {
+        if (number < base) return;
+        try {
+            ensureCapacity(number);
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Unable to extend " + file, ioe);
+            return;
+        }
+        for (int gap = highest + 1; gap < number; gap++) {
+            if (!new File(buildDir, Integer.toString(gap)).isDirectory())
+                writeSlot(gap, 0, (byte) 0, (byte) 0);
+        }
+        byte flags = keepLog ? (byte) (FLAG_PRESENT | FLAG_KEEP_LOG) : FLAG_PRESENT;
+        if (keepLog && ((flags(number) & FLAG_KEPT_BY_PLUGIN) != 0)) flags |= FLAG_KEPT_BY_PLUGIN;
+        writeSlot(number, timestamp, (byte) (BuildRecord.toOrdinal(result) + 1), flags);
+        if (number > highest) highest = number;
+    }
+
+    /**
+     * @return true if the build is kept because the plugin kept it, rather than because a user did
+     */
+    public synchronized boolean isKeptByPlugin(final int number) {
+        return (state(number) == PRESENT) && ((buffer.get(offset(number) + 13) & FLAG_KEPT_BY_PLUGIN) != 0);
+    }
+
+    /**
+     * Mark a kept build as kept by the plugin, so it may be released again, or clear the mark.
+     */
+    public synchronized void setKeptByPlugin(final int number, final boolean kept) {
+        if (state(number) != PRESENT) return;
+        final int offset = offset(number);
+        final byte flags = buffer.get(offset + 13);
+        if ((flags & FLAG_KEEP_LOG) == 0) return;
+        writeSlot(number, buffer.getLong(offset + 4), buffer.get(offset + 12),
+                  kept ? (byte) (flags | FLAG_KEPT_BY_PLUGIN) : (byte) (flags & ~FLAG_KEPT_BY_PLUGIN));
+    }
+
+    /**
+     * @return the numbers of the builds kept by the plugin, oldest first
+     */
+    public synchronized List<Integer> getKeptByPlugin() {
+        final List<Integer> kept = new ArrayList<Integer>();
+        for (int number = base; number <= highest; number++) {
+            if (isKeptByPlugin(number)) kept.add(number);
+        }
+        return kept;
+    }
+
+    /**
+     * @return the numbers of the builds the plugin kept that changed while the file was closed, which are only still
+     *         kept by the plugin if they are still kept once they have been recorded again
+     */
+    public synchronized List<Integer> getStaleKeptByPlugin() {
+        final List<Integer> stale = new ArrayList<Integer>();
+        for (int number = base; number <= highest; number++) {
+            final byte flags = flags(number);
+            if (((flags & FLAG_STALE) != 0) && ((flags & FLAG_KEPT_BY_PLUGIN) != 0)) stale.add(number);
+        }
+        return stale;
+    }
+
+    public synchronized void remove(final int number) {
+        if ((number < base) || (offset(number) + RECORD_SIZE > buffer.capacity())) return;
+        writeSlot(number, 0, (byte) 0, (byte) 0);
+    }
+
+    public synchronized int state(final int number) {
+        if (!isValid(number)) return UNKNOWN;
+        final byte flags = buffer.get(offset(number) + 13);
+        if ((flags & FLAG_STALE) != 0) return UNKNOWN;
+        return (flags & FLAG_PRESENT) == 0 ? ABSENT : PRESENT;
+    }
+
+    private boolean isValid(final int number) {
+        if ((number < base) || (offset(number) + RECORD_SIZE > buffer.capacity())) return false;
+        final int offset = offset(number);
+        if (buffer.getInt(offset) != number) return false;
+        return buffer.getInt(offset + 16) == checksum(number, buffer.getLong(offset + 4), buffer.get(offset + 12),
+                                                      buffer.get(offset + 13));
+    }
+
+    /**
+     * @return the flags of the slot, stale or not, or none if the slot is not valid
+     */
+    private byte flags(final int number) {
+        return isValid(number) ? buffer.get(offset(number) + 13) : 0;
+    }
+
+    /**
+     * @return the record for the build, or null if the file does not know of a build with that number
+     */
+    public synchronized BuildRecord read(final int number) {
+        if (state(number) != PRESENT) return null;
+        final int offset = offset(number);
+        return new BuildRecord(number, buffer.getLong(offset + 4), BuildRecord.fromOrdinal(buffer.get(offset + 12) - 1),
+                               (buffer.get(offset + 13) & FLAG_KEEP_LOG) != 0);
+    }
+
+    synchronized void close() {
+        buffer.put(12, STATE_CLEAN);
+        buffer.putLong(16, System.currentTimeMillis());
+        buffer.force();
+    }
+
+    private void writeSlot(final int number, final long timestamp, final byte result, final byte flags) {
+        final int offset = offset(number);
+        buffer.putInt(offset + 16, 0);
+        buffer.putInt(offset, number);
+        buffer.putLong(offset + 4, timestamp);
+        buffer.put(offset + 12, result);
+        buffer.put(offset + 13, flags);
+        buffer.putInt(offset + 16, checksum(number, timestamp, result, flags));
+    }
+
+    /**
+     * @param since builds whose build.xml changed after this time are marked stale
+     */
+    private void reconcile(final long since) {
+        final BitSet existing = listBuildNumbers();
+        for (int number = base; offset(number) + RECORD_SIZE <= buffer.capacity(); number++) {
+            final int state = state(number);
+            final boolean exists = existing.get(number - base);
+            if ((state == PRESENT) && !exists) {
+                writeSlot(number, 0, (byte) 0, (byte) 0);
+            } else if ((state != PRESENT) && exists) {
+                if (state == ABSENT) buffer.putInt(offset(number) + 16, 0);
+            } else if ((state == PRESENT) && (new File(buildDir, number + "/build.xml").lastModified() > since)) {
+                final int offset = offset(number);
+                writeSlot(number, buffer.getLong(offset + 4), buffer.get(offset + 12),
+                          (byte) (buffer.get(offset + 13) | FLAG_STALE));
+            }
+        }
+        buffer.force();
+    }
+
+    private int findHighest() {
+        int number = base + (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE - 1;
+        while ((number >= base) && (state(number) == UNKNOWN)) number--;
+        return number;
+    }
+
+    private int lowestBuildNumber(final int nextBuildNumber) {
+        int lowest = Math.max(nextBuildNumber, 1);
+        final String[] names = buildDir.list();
+        if (names == null) return lowest;
+        for (String name : names) {
+            final int number = parse(name);
+            if (number > 0) lowest = Math.min(lowest, number);
+        }
+        return lowest;
+    }
+
+    private BitSet listBuildNumbers() {
+        final BitSet numbers = new BitSet();
+        final String[] names = buildDir.list();
+        if (names == null) return numbers;
+        for (String name : names) {
+            final int number = parse(name);
+            if ((number >= base) && new File(buildDir, name).isDirectory()) numbers.set(number - base);
+        }
+        return numbers;
+    }
+
+    private static int parse(final String name) {
+        try {
+            return Integer.parseInt(name);
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    private void ensureCapacity(final int number) throws IOException {
+        final long required = (long) HEADER_SIZE + ((long) number - base + 1) * RECORD_SIZE;
+        if (required <= buffer.capacity()) return;
+        if (required > Integer.MAX_VALUE) throw new IOException("Build number " + number + " is out of range");
+        map(Math.min(Integer.MAX_VALUE, ((required / CHUNK_SIZE) + 1) * CHUNK_SIZE));
+    }
+
+    private void map(final long size) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private int offset(final int number) {
+        return HEADER_SIZE + (number - base) * RECORD_SIZE;
+    }
+
+    private static int checksum(final int number, final long timestamp, final byte result, final byte flags) {
+        int hash = MAGIC;
+        hash = 31 * hash + number;
+        hash = 31 * hash + (int) (timestamp ^ (timestamp >>> 32));
+        hash = 31 * hash + result;
+        hash = 31 * hash + flags;
+        return hash == 0 ? 1 : hash;
+    }
+
+    @Extension
+    public static class RecordSaveableListener extends SaveableListener {
+
+        @Override
+        public void onChange(final Saveable o, final XmlFile file) {
+            if (!(o instanceof Run)) return;
+            final Run<?, ?> run = (Run<?, ?>) o;
+            final BuildRecordFile records = peek(run.getParent());
+            if (records != null) records.record(run);
+        }
+
+    }
+
+    @Extension
+    public static class RecordRunListener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onDeleted(final Run<?, ?> run) {
+            final BuildRecordFile records = peek(run.getParent());
+            if (records != null) records.remove(run.getNumber());
+        }
+
+    }
+
+    @Extension
+    public static class RecordItemListener extends ItemListener {
+
+        @Override
+        public void onDeleted(final Item item) {
+            if (item instanceof Job) close((Job<?, ?>) item);
+        }
+
+        @Override
+        public void onLocationChanged(final Item item, final String oldFullName, final String newFullName) {
+            if (item instanceof Job) close((Job<?, ?>) item);
+        }
+
+    }
+
+}
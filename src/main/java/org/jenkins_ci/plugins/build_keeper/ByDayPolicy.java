@@ -25,47 +25,91 @@
 package org.jenkins_ci.plugins.build_keeper;
 
 import hudson.Extension;
-import hudson.model.AbstractBuild;
+import hudson.Util;
 import hudson.model.BuildListener;
-import hudson.model.Run;
+import hudson.util.ComboBoxModel;
+import hudson.util.FormValidation;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 
 import java.io.IOException;
-import java.util.Calendar;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class ByDayPolicy extends PeriodAndFailedPolicy {
 
+    private static final Logger LOGGER = Logger.getLogger(ByDayPolicy.class.getName());
+
+    private PeriodCalendar.Unit unit;
+    private String timeZone;
+    private transient volatile PeriodCalendar calendar;
+
     @DataBoundConstructor
     public ByDayPolicy(final int buildPeriod) {
         super(buildPeriod, true);
     }
 
+    public PeriodCalendar.Unit getUnit() {
+        return unit == null ? PeriodCalendar.Unit.DAYS : unit;
+    }
+
+    @DataBoundSetter
+    public void setUnit(final PeriodCalendar.Unit unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * @return the id of the time zone periods start in, or null for the time zone of the controller
+     */
+    public String getTimeZone() {
+        return timeZone;
+    }
+
+    @DataBoundSetter
+    public void setTimeZone(final String timeZone) {
+        this.timeZone = Util.fixEmptyAndTrim(timeZone);
+        calendar = null;
+    }
+
     @Override
-    public void apply(final AbstractBuild build, final BuildListener listener) throws IOException {
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
         final long earliestStamp = getEarliestTimestampInRange(build);
-        Run current = build;
-        while ((current = current.getPreviousBuild()) != null) {
-            if (current.getTimeInMillis() < earliestStamp) break;
-            if (current.isKeepLog()) return;
-        }
-        keep(build);
+        final KeptBuildIndex kept = history.getKeptBuilds();
+        if (kept.isKeptSince(earliestStamp, build.getNumber())) return;
+        // a later build that finished first, and would have been skipped had this one been kept
+        final long next = kept.getNextKeptTimestamp(build.getNumber());
+        if ((next != Long.MAX_VALUE) && (getCalendar().getStart(getUnit(), next, getBuildPeriod()) <= build.getTimestamp())) return;
+        keep(history, build);
     }
 
-    private long getEarliestTimestampInRange(final AbstractBuild build) {
-        final Calendar earliestDay = getMidnight(build);
-        int offset = getBuildPeriod() -1;
-        if (offset < 0) offset = 0;
-        earliestDay.add(Calendar.DAY_OF_YEAR, -offset);
-        return earliestDay.getTimeInMillis();
+    private long getEarliestTimestampInRange(final BuildRecord build) {
+        return getCalendar().getStart(getUnit(), build.getTimestamp(), getBuildPeriod());
     }
 
-    private Calendar getMidnight(final AbstractBuild build) {
-        final Calendar today = build.getTimestamp();
-        today.set(Calendar.HOUR_OF_DAY, 0);
-        today.set(Calendar.MINUTE, 0);
-        today.set(Calendar.SECOND, 0);
-        today.set(Calendar.MILLISECOND, 0);
-        return today;
+    PeriodCalendar getCalendar() {
+        PeriodCalendar calendar = this.calendar;
+        if (calendar == null) {
+            ZoneId zone = ZoneId.systemDefault();
+            if (timeZone != null) {
+                try {
+                    zone = ZoneId.of(timeZone);
+                } catch (DateTimeException dte) {
+                    LOGGER.log(Level.WARNING, "Unknown time zone " + timeZone + ", using " + zone, dte);
+                }
+            }
+            calendar = new PeriodCalendar(zone);
+            this.calendar = calendar;
+        }
+        return calendar;
+    }
+
+    @Override
+    public int getEvaluationCost() {
+        return 10;
     }
 
     @Extension
@@ -80,6 +124,21 @@ public class ByDayPolicy extends PeriodAndFailedPolicy {
             return 1;
         }
 
+        public ComboBoxModel doFillTimeZoneItems() {
+            return new ComboBoxModel(new TreeSet<String>(ZoneId.getAvailableZoneIds()));
+        }
+
+        public FormValidation doCheckTimeZone(@QueryParameter final String value) {
+            final String zone = Util.fixEmptyAndTrim(value);
+            if (zone == null) return FormValidation.ok(Messages.byDayPolicy_timeZone_default(ZoneId.systemDefault()));
+            try {
+                ZoneId.of(zone);
+                return FormValidation.ok();
+            } catch (DateTimeException dte) {
+                return FormValidation.error(Messages.byDayPolicy_timeZone_unknown(zone));
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.model.BuildListener;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Combines the decisions of several policies, evaluated cheapest first over one {@link SharedHistory} so that a build
+ * is loaded once however many of the policies look at it.
+ *
+ * Builds a policy releases are released whether or not the composite uses that policy's decision, as the policy has
+ * already forgotten them and would never release them again, unless the composite keeps them.
+ *
+ * Policies that are not {@link BuildKeeperPolicy#isHistoryAware() history aware} keep builds themselves, so to the
+ * composite they never keep anything.
+ */
+public class CompositePolicy extends BuildKeeperPolicy {
+
+    public enum Operator {
+
+        /** Keep the builds that every policy would keep. */
+        AND,
+        /** Keep the builds that any policy would keep. */
+        OR,
+        /** Keep the builds that the first policy that keeps anything would keep. */
+        FIRST_MATCH;
+
+        public String getDisplayName() {
+            switch (this) {
+                case AND: return Messages.compositePolicy_operator_and();
+                case OR: return Messages.compositePolicy_operator_or();
+                default: return Messages.compositePolicy_operator_firstMatch();
+            }
+        }
+
+    }
+
+    private final List<BuildKeeperPolicy> policies;
+    private final Operator operator;
+    private transient List<BuildKeeperPolicy> ordered;
+
+    @DataBoundConstructor
+    public CompositePolicy(final List<BuildKeeperPolicy> policies, final Operator operator) {
+        this.policies = policies == null ? Collections.<BuildKeeperPolicy>emptyList() : new ArrayList<BuildKeeperPolicy>(policies);
+        this.operator = operator == null ? Operator.OR : operator;
+    }
+
+    public List<BuildKeeperPolicy> getPolicies() {
+        return Collections.unmodifiableList(policies);
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return true only if every policy is, as a policy that keeps builds itself would get past the shared history
+     */
+    @Override
+    public boolean isHistoryAware() {
+        for (BuildKeeperPolicy policy : policies) {
+            if (!policy.isHistoryAware()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isSimulable() {
+        for (BuildKeeperPolicy policy : policies) {
+            if (!policy.isSimulable()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int getEvaluationCost() {
+        int cost = 0;
+        for (BuildKeeperPolicy policy : policies)
+            cost = Math.max(cost, policy.getEvaluationCost());
+        return cost;
+    }
+
+    @Override
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
+        final SharedHistory shared = new SharedHistory(history);
+        final List<SharedHistory.Decision> decided = new ArrayList<SharedHistory.Decision>();
+        Map<Integer, BuildRecord> keep = null;
+        for (BuildKeeperPolicy policy : getOrderedPolicies()) {
+            final SharedHistory.Decision decision = shared.decide(policy, build, listener);
+            decided.add(decision);
+            final Map<Integer, BuildRecord> kept = decision.getKept();
+            if (operator == Operator.AND) {
+                if (keep == null) {
+                    keep = new TreeMap<Integer, BuildRecord>(kept);
+                } else {
+                    keep.keySet().retainAll(kept.keySet());
+                }
+                if (keep.isEmpty()) break;
+            } else if (operator == Operator.OR) {
+                if (keep == null) keep = new TreeMap<Integer, BuildRecord>();
+                keep.putAll(kept);
+            } else if (!kept.isEmpty()) {
+                keep = kept;
+                break;
+            }
+        }
+        if (keep == null) keep = Collections.emptyMap();
+        for (SharedHistory.Decision decision : decided) {
+            for (BuildRecord released : decision.getReleased().values()) {
+                if (!keep.containsKey(released.getNumber())) history.keepLog(released, false);
+            }
+        }
+        for (BuildRecord kept : keep.values()) {
+            history.keepLog(kept, true);
+            final long expiry = shared.getExpiry(kept.getNumber());
+            if (expiry != Long.MAX_VALUE) history.expireAt(kept, expiry);
+        }
+    }
+
+    @Override
+    void takeOver(final BuildKeeperPolicy previous) {
+        if (!(previous instanceof CompositePolicy)) return;
+        final List<BuildKeeperPolicy> previousPolicies = ((CompositePolicy) previous).policies;
+        if (previousPolicies.size() != policies.size()) return;
+        for (int i = 0; i < policies.size(); i++)
+            policies.get(i).takeOver(previousPolicies.get(i));
+    }
+
+    private List<BuildKeeperPolicy> getOrderedPolicies() {
+        if (ordered == null) {
+            final List<BuildKeeperPolicy> sorted = new ArrayList<BuildKeeperPolicy>(policies);
+            // stable, so policies of the same cost keep the order they were configured in
+            Collections.sort(sorted, new Comparator<BuildKeeperPolicy>() {
+                public int compare(final BuildKeeperPolicy a, final BuildKeeperPolicy b) {
+                    return a.getEvaluationCost() - b.getEvaluationCost();
+                }
+            });
+            ordered = sorted;
+        }
+        return ordered;
+    }
+
+    @Extension
+    public static class CompositePolicyDescriptor extends BuildKeeperPolicyDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.compositePolicy_displayName();
+        }
+
+    }
+
+}
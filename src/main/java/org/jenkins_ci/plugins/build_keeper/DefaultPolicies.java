@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Build keepers that apply to every job in a folder, or in Jenkins, that does not have its own, either as a build
+ * wrapper or as a {@link BuildKeeperProperty}. The build keeper of
+ * each job is resolved once, by looking up its folder and then each folder above, and cached until the defaults, the
+ * job or the folders change, so finding it when a build completes is a map lookup.
+ */
+@Extension
+public class DefaultPolicies extends GlobalConfiguration {
+
+    private static final Object NONE = new Object();
+
+    private List<DefaultPolicy> defaults = new ArrayList<DefaultPolicy>();
+    private transient volatile Map<String, BuildKeeper> byFolder;
+    private transient volatile Map<Job<?, ?>, Object> resolved = newCache();
+
+    public DefaultPolicies() {
+        load();
+    }
+
+    public static DefaultPolicies get() {
+        return Jenkins.get().getDescriptorByType(DefaultPolicies.class);
+    }
+
+    private static Map<Job<?, ?>, Object> newCache() {
+        return Collections.synchronizedMap(new WeakHashMap<Job<?, ?>, Object>());
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.defaultPolicies_displayName();
+    }
+
+    public List<DefaultPolicy> getDefaults() {
+        return Collections.unmodifiableList(defaults);
+    }
+
+    @DataBoundSetter
+    public void setDefaults(final List<DefaultPolicy> defaults) {
+        this.defaults = defaults == null ? new ArrayList<DefaultPolicy>() : new ArrayList<DefaultPolicy>(defaults);
+        invalidate();
+    }
+
+    @Override
+    public boolean configure(final StaplerRequest req, final JSONObject json) throws FormException {
+        setDefaults(null);
+        req.bindJSON(this, json);
+        save();
+        return true;
+    }
+
+    /**
+     * Forget every job's build keeper, to be resolved again when next needed.
+     */
+    void invalidate() {
+        byFolder = null;
+        resolved = newCache();
+    }
+
+    void invalidate(final Job<?, ?> job) {
+        resolved.remove(job);
+    }
+
+    /**
+     * @return the build keeper of the job, or the default for its folder if it has none, or null if neither
+     */
+    public BuildKeeper getKeeper(final Job<?, ?> job) {
+        final Map<Job<?, ?>, Object> cache = resolved;
+        Object keeper = cache.get(job);
+        if (keeper == null) {
+            keeper = resolve(job);
+            cache.put(job, keeper == null ? NONE : keeper);
+        }
+        return keeper instanceof BuildKeeper ? (BuildKeeper) keeper : null;
+    }
+
+    BuildKeeper resolve(final Job<?, ?> job) {
+        if (job instanceof BuildableItemWithBuildWrappers) {
+            final BuildKeeper own = ((BuildableItemWithBuildWrappers) job).getBuildWrappersList().get(BuildKeeper.class);
+            if (own != null) return own;
+        }
+        final BuildKeeperProperty property = job.getProperty(BuildKeeperProperty.class);
+        if ((property != null) && (property.getPolicy() != null)) return property.toBuildKeeper();
+        return resolve(getByFolder(), job.getFullName());
+    }
+
+    /**
+     * @return the default of the nearest folder above the item, where the empty name stands for Jenkins itself
+     */
+    static BuildKeeper resolve(final Map<String, BuildKeeper> byFolder, final String fullName) {
+        String name = fullName;
+        while (name.length() > 0) {
+            final int slash = name.lastIndexOf('/');
+            name = slash < 0 ? "" : name.substring(0, slash);
+            final BuildKeeper keeper = byFolder.get(name);
+            if (keeper != null) return keeper;
+        }
+        return null;
+    }
+
+    private Map<String, BuildKeeper> getByFolder() {
+        Map<String, BuildKeeper> folders = byFolder;
+        if (folders == null) {
+            folders = index(defaults);
+            byFolder = folders;
+        }
+        return folders;
+    }
+
+    static Map<String, BuildKeeper> index(final List<DefaultPolicy> defaults) {
+        final Map<String, BuildKeeper> folders = new HashMap<String, BuildKeeper>();
+        for (DefaultPolicy policy : defaults) {
+            if ((policy.getPolicy() != null) && !folders.containsKey(policy.getFolder()))
+                folders.put(policy.getFolder(), policy.toBuildKeeper());
+        }
+        return folders;
+    }
+
+    /**
+     * Follow a folder that has been renamed or moved.
+     */
+    void moved(final String oldFullName, final String newFullName) {
+        boolean changed = false;
+        final List<DefaultPolicy> moved = new ArrayList<DefaultPolicy>();
+        for (DefaultPolicy policy : defaults) {
+            final String folder = policy.getFolder();
+            if (folder.equals(oldFullName) || folder.startsWith(oldFullName + '/')) {
+                moved.add(policy.withFolder(newFullName + folder.substring(oldFullName.length())));
+                changed = true;
+            } else {
+                moved.add(policy);
+            }
+        }
+        if (changed) {
+            setDefaults(moved);
+            save();
+        } else {
+            invalidate();
+        }
+    }
+
+    @Extension
+    public static class DefaultPolicyItemListener extends ItemListener {
+
+        @Override
+        public void onUpdated(final Item item) {
+            if (item instanceof Job) get().invalidate((Job<?, ?>) item);
+        }
+
+        @Override
+        public void onLocationChanged(final Item item, final String oldFullName, final String newFullName) {
+            get().moved(oldFullName, newFullName);
+        }
+
+        @Override
+        public void onDeleted(final Item item) {
+            get().invalidate();
+        }
+
+    }
+
+    /**
+     * Job properties set by a Pipeline's properties step are saved without the item being reported as updated.
+     */
+    @Extension
+    public static class DefaultPolicySaveableListener extends SaveableListener {
+
+        @Override
+        public void onChange(final Saveable o, final XmlFile file) {
+            if (o instanceof Job) get().invalidate((Job<?, ?>) o);
+        }
+
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * The policy for the jobs in one folder, or in all of Jenkins, that do not have a build keeper of their own.
+ */
+public class DefaultPolicy extends AbstractDescribableImpl<DefaultPolicy> {
+
+    private final String folder;
+    private final BuildKeeperPolicy policy;
+    private boolean evaluateAsynchronously;
+    private int maxKept;
+
+    /**
+     * @param folder the full name of the folder, or empty for every job
+     */
+    @DataBoundConstructor
+    public DefaultPolicy(final String folder, final BuildKeeperPolicy policy) {
+        this.folder = normalize(folder);
+        this.policy = policy;
+    }
+
+    static String normalize(final String folder) {
+        String name = Util.fixNull(folder).trim();
+        while (name.startsWith("/")) name = name.substring(1);
+        while (name.endsWith("/")) name = name.substring(0, name.length() - 1);
+        return name;
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public BuildKeeperPolicy getPolicy() {
+        return policy;
+    }
+
+    public boolean isEvaluateAsynchronously() {
+        return evaluateAsynchronously;
+    }
+
+    @DataBoundSetter
+    public void setEvaluateAsynchronously(final boolean evaluateAsynchronously) {
+        this.evaluateAsynchronously = evaluateAsynchronously;
+    }
+
+    public int getMaxKept() {
+        return maxKept;
+    }
+
+    @DataBoundSetter
+    public void setMaxKept(final int maxKept) {
+        this.maxKept = Math.max(0, maxKept);
+    }
+
+    DefaultPolicy withFolder(final String newFolder) {
+        final DefaultPolicy moved = new DefaultPolicy(newFolder, policy);
+        moved.evaluateAsynchronously = evaluateAsynchronously;
+        moved.maxKept = maxKept;
+        return moved;
+    }
+
+    BuildKeeper toBuildKeeper() {
+        final BuildKeeper keeper = new BuildKeeper(policy);
+        keeper.setEvaluateAsynchronously(evaluateAsynchronously);
+        keeper.setMaxKept(maxKept);
+        return keeper.appliedOnCompletion();
+    }
+
+    @Extension
+    public static class DefaultPolicyDescriptor extends Descriptor<DefaultPolicy> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.defaultPolicy_displayName();
+        }
+
+        public BuildKeeperPolicy.BuildKeeperPolicyDescriptor getDefaultPolicy() {
+            return Jenkins.get().getDescriptorByType(ByDayPolicy.ByDayPolicyDescriptor.class);
+        }
+
+        public FormValidation doCheckFolder(@QueryParameter final String value) {
+            final String folder = normalize(value);
+            if (folder.length() == 0) return FormValidation.ok(Messages.defaultPolicy_allJobs());
+            final Item item = Jenkins.get().getItemByFullName(folder, Item.class);
+            if (!(item instanceof ItemGroup)) return FormValidation.warning(Messages.defaultPolicy_noSuchFolder(folder));
+            return FormValidation.ok();
+        }
+
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.model.BuildListener;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.util.FormValidation;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps builds that took longer than the upper percentile, or less than the lower percentile, of the job's earlier
+ * builds. The percentiles come from a {@link DurationSketch} that is fed once per build and saved in the job
+ * directory; a job without one is seeded with a single pass back through its builds. The sketch does not depend on
+ * the percentiles, so they can be changed without seeding it again.
+ *
+ * Only builds that completed, successfully or unstable, are fed to the sketch or kept, so that builds cut short by
+ * a failure do not count as fast. A build that completes after a later one has already been fed is judged but not fed.
+ *
+ * There is one sketch per job, as there is one file, whichever instance of the policy feeds it: saving the job
+ * configuration creates a new instance, and two instances in a composite policy must not feed the file in turn.
+ */
+public class DurationOutlierPolicy extends BuildKeeperPolicy {
+
+    static final int DEFAULT_MIN_BUILDS = 30;
+    private static final Logger LOGGER = Logger.getLogger(DurationOutlierPolicy.class.getName());
+    private static final Map<Object, DurationSketch> SKETCHES = Collections.synchronizedMap(new WeakHashMap<Object, DurationSketch>());
+    /** One lock per job, so seeding a sketch only holds up the builds of that job. */
+    private static final Map<Object, Object> SEEDING = new WeakHashMap<Object, Object>();
+
+    private final double highPercentile;
+    private final double lowPercentile;
+    private int minBuilds = DEFAULT_MIN_BUILDS;
+
+    /**
+     * @param lowPercentile the percentile below which builds are kept, or 0 to only keep slow builds
+     */
+    @DataBoundConstructor
+    public DurationOutlierPolicy(final double highPercentile, final double lowPercentile) {
+        this.highPercentile = highPercentile;
+        this.lowPercentile = lowPercentile;
+    }
+
+    public double getHighPercentile() {
+        return highPercentile;
+    }
+
+    public double getLowPercentile() {
+        return lowPercentile;
+    }
+
+    public int getMinBuilds() {
+        return minBuilds;
+    }
+
+    /**
+     * @param minBuilds how many builds must be seen before any are judged to be outliers
+     */
+    @DataBoundSetter
+    public void setMinBuilds(final int minBuilds) {
+        this.minBuilds = Math.max(1, minBuilds);
+    }
+
+    @Override
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
+        if (!isCounted(build)) return;
+        final long duration = history.getDuration(build);
+        if (duration <= 0) return;
+        final DurationSketch sketch = getSketch(history, build);
+        synchronized (sketch) {
+            if (sketch.isOutlier(duration, lowPercentile / 100, highPercentile / 100, minBuilds))
+                history.keepLog(build, true);
+            if (build.getNumber() <= sketch.getLast()) return;
+            sketch.add(duration);
+            sketch.setLast(build.getNumber());
+            save(history, sketch);
+        }
+    }
+
+    private static boolean isCounted(final BuildRecord build) {
+        return (build.getResult() != null) && build.getResult().isBetterOrEqualTo(Result.UNSTABLE);
+    }
+
+    private static DurationSketch getSketch(final BuildHistory history, final BuildRecord build) {
+        DurationSketch sketch = SKETCHES.get(history.getKey());
+        if (sketch != null) return sketch;
+        Object lock;
+        synchronized (SEEDING) {
+            lock = SEEDING.get(history.getKey());
+            if (lock == null) {
+                lock = new Object();
+                SEEDING.put(history.getKey(), lock);
+            }
+        }
+        synchronized (lock) {
+            sketch = SKETCHES.get(history.getKey());
+            if (sketch == null) {
+                sketch = load(history);
+                if (sketch == null) {
+                    sketch = seed(history, build);
+                    save(history, sketch);
+                }
+                SKETCHES.put(history.getKey(), sketch);
+            }
+            return sketch;
+        }
+    }
+
+    /**
+     * @return a sketch of the builds before this one, fed in one pass back through the history
+     */
+    static DurationSketch seed(final BuildHistory history, final BuildRecord build) {
+        final DurationSketch sketch = new DurationSketch();
+        for (BuildRecord previous = history.getPreviousBuild(build); previous != null; previous = history.getPreviousBuild(previous)) {
+            if (sketch.getLast() == 0) sketch.setLast(previous.getNumber());
+            if (!isCounted(previous)) continue;
+            final long duration = history.getDuration(previous);
+            if (duration > 0) sketch.add(duration);
+        }
+        return sketch;
+    }
+
+    /**
+     * @return the file the job's sketch is saved in, or null if the history is not that of a job
+     */
+    private static File getFile(final BuildHistory history) {
+        final Object key = history.getKey();
+        return key instanceof Job ? new File(((Job<?, ?>) key).getRootDir(), DurationSketch.FILE_NAME) : null;
+    }
+
+    private static DurationSketch load(final BuildHistory history) {
+        final File file = getFile(history);
+        if (file == null) return null;
+        try {
+            return DurationSketch.load(file);
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Failed to load the build durations from " + file + ", seeding them again", ioe);
+            return null;
+        }
+    }
+
+    private static void save(final BuildHistory history, final DurationSketch sketch) {
+        final File file = getFile(history);
+        if (file == null) return;
+        try {
+            sketch.save(file);
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Failed to save the build durations to " + file, ioe);
+        }
+    }
+
+    @Override
+    public int getEvaluationCost() {
+        return 10;
+    }
+
+    @Extension
+    public static class DurationOutlierPolicyDescriptor extends BuildKeeperPolicyDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.durationOutlierPolicy_displayName();
+        }
+
+        public FormValidation doCheckHighPercentile(@QueryParameter final double value) {
+            if ((value <= 50) || (value >= 100)) return FormValidation.error(Messages.durationOutlierPolicy_highPercentile());
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckLowPercentile(@QueryParameter final double value) {
+            if ((value < 0) || (value >= 50)) return FormValidation.error(Messages.durationOutlierPolicy_lowPercentile());
+            return FormValidation.ok();
+        }
+
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * The distribution of the durations of a job's builds, as counts in buckets whose bounds grow by a fixed ratio, so
+ * that any quantile is known to within {@link #RELATIVE_ACCURACY} of the true duration. Adding a duration increments
+ * one count, and the whole sketch is saved in the job directory as one int per bucket between the fastest and the
+ * slowest build, so that it never has to be recomputed from the history.
+ */
+class DurationSketch {
+
+    static final String FILE_NAME = "build-keeper-durations.bin";
+    static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final int MAGIC = 0x424b4453;
+    private static final int VERSION = 1;
+
+    private int offset;
+    private int[] counts = new int[0];
+    private long count;
+    private int last;
+
+    /**
+     * @return the number of the latest build fed to the sketch
+     */
+    int getLast() {
+        return last;
+    }
+
+    void setLast(final int last) {
+        this.last = last;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @param duration in milliseconds, at least 1
+     */
+    void add(final long duration) {
+        final int bucket = bucket(duration);
+        if (counts.length == 0) {
+            offset = bucket;
+            counts = new int[1];
+        } else if (bucket < offset) {
+            final int[] grown = new int[counts.length + offset - bucket];
+            System.arraycopy(counts, 0, grown, offset - bucket, counts.length);
+            counts = grown;
+            offset = bucket;
+        } else if (bucket >= offset + counts.length) {
+            counts = Arrays.copyOf(counts, bucket - offset + 1);
+        }
+        counts[bucket - offset]++;
+        count++;
+    }
+
+    static int bucket(final long duration) {
+        return (int) Math.ceil(Math.log(Math.max(1, duration)) / LOG_GAMMA);
+    }
+
+    /**
+     * @return the bucket holding the quantile, between 0 and 1, of the durations seen
+     */
+    int quantileBucket(final double quantile) {
+        final long rank = (long) Math.floor(quantile * (count - 1));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) return offset + i;
+        }
+        return offset + counts.length - 1;
+    }
+
+    /**
+     * @return the quantile, between 0 and 1, of the durations seen, or NaN if none have been
+     */
+    double getQuantile(final double quantile) {
+        if (count == 0) return Double.NaN;
+        return 2 * Math.pow(GAMMA, quantileBucket(quantile)) / (GAMMA + 1);
+    }
+
+    /**
+     * @param low the lower quantile, or 0 to only look for slow builds
+     * @return true if the duration falls in a bucket beyond either quantile, once at least min durations have been seen
+     */
+    boolean isOutlier(final long duration, final double low, final double high, final int min) {
+        if ((count == 0) || (count < min)) return false;
+        final int bucket = bucket(duration);
+        return (bucket > quantileBucket(high)) || ((low > 0) && (bucket < quantileBucket(low)));
+    }
+
+    /**
+     * @return the sketch saved in the file, or null if there is none
+     */
+    static DurationSketch load(final File file) throws IOException {
+        if (!file.exists()) return null;
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) return null;
+            final DurationSketch sketch = new DurationSketch();
+            sketch.last = in.readInt();
+            sketch.offset = in.readInt();
+            sketch.counts = new int[in.readInt()];
+            for (int i = 0; i < sketch.counts.length; i++) {
+                sketch.counts[i] = in.readInt();
+                sketch.count += sketch.counts[i];
+            }
+            return sketch;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the sketch to a temporary file and move it over the old one, so a crash leaves one or the other.
+     */
+    void save(final File file) throws IOException {
+        final File temp = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(last);
+            out.writeInt(offset);
+            out.writeInt(counts.length);
+            for (int bucketCount : counts)
+                out.writeInt(bucketCount);
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.StreamBuildListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.LogTaskListener;
+import hudson.util.NamedThreadFactory;
+import jenkins.util.SystemProperties;
+
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded queue of policy evaluations run on a small pool of controller threads. Evaluations submitted with the same
+ * key (the job) run one at a time in submission order, so policies that look at the previous decisions of the job
+ * see them. Evaluations run as the system, as the build thread would, since keeping a build checks permissions.
+ */
+public class EvaluationQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(EvaluationQueue.class.getName());
+    private static final int WORKERS = SystemProperties.getInteger(EvaluationQueue.class.getName() + ".workers", 2);
+    private static final int CAPACITY = SystemProperties.getInteger(EvaluationQueue.class.getName() + ".capacity", 1000);
+    private static final int SHUTDOWN_TIMEOUT = SystemProperties.getInteger(EvaluationQueue.class.getName() + ".shutdownTimeout", 30);
+
+    private static EvaluationQueue instance;
+
+    private final ThreadPoolExecutor executor;
+    private final int capacity;
+    private final Semaphore permits;
+    private final Map<Object, Deque<Evaluation>> pending = new HashMap<Object, Deque<Evaluation>>();
+    private final AtomicLong evaluated = new AtomicLong();
+    private final AtomicLong lastLag = new AtomicLong();
+    private final AtomicLong maxLag = new AtomicLong();
+
+    EvaluationQueue(final int workers, final int capacity) {
+        this.capacity = capacity;
+        permits = new Semaphore(capacity);
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                                          new NamedThreadFactory(new DaemonThreadFactory(), "Build keeper evaluation"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized EvaluationQueue get() {
+        if (instance == null) instance = new EvaluationQueue(WORKERS, CAPACITY);
+        return instance;
+    }
+
+    static BuildListener listener() {
+        return new StreamBuildListener(new LogTaskListener(LOGGER, Level.FINE).getLogger(), Charset.defaultCharset());
+    }
+
+    /**
+     * Queue an evaluation behind any others for the same key, blocking while the queue is full.
+     */
+    public void submit(final Object key, final Runnable evaluation) throws InterruptedException {
+        permits.acquire();
+        final boolean start;
+        synchronized (pending) {
+            Deque<Evaluation> queue = pending.get(key);
+            start = queue == null;
+            if (start) {
+                queue = new ArrayDeque<Evaluation>();
+                pending.put(key, queue);
+            }
+            queue.add(new Evaluation(evaluation));
+        }
+        if (!start) return;
+        final Runnable drain = new Runnable() {
+            public void run() {
+                drain(key);
+            }
+        };
+        try {
+            executor.execute(drain);
+        } catch (RejectedExecutionException ree) {
+            drain.run();
+        }
+    }
+
+    private void drain(final Object key) {
+        while (true) {
+            final Evaluation evaluation;
+            synchronized (pending) {
+                evaluation = pending.get(key).poll();
+                if (evaluation == null) {
+                    pending.remove(key);
+                    return;
+                }
+            }
+            final long lag = System.currentTimeMillis() - evaluation.queued;
+            lastLag.set(lag);
+            if (lag > maxLag.get()) maxLag.set(lag);
+            final ACLContext context = ACL.as2(ACL.SYSTEM2);
+            try {
+                evaluation.task.run();
+            } catch (RuntimeException re) {
+                LOGGER.log(Level.WARNING, "Build keeper evaluation failed", re);
+            } finally {
+                context.close();
+                evaluated.incrementAndGet();
+                permits.release();
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getQueueDepth() {
+        return capacity - permits.availablePermits();
+    }
+
+    public long getEvaluatedCount() {
+        return evaluated.get();
+    }
+
+    public long getLastLagMillis() {
+        return lastLag.get();
+    }
+
+    public long getMaxLagMillis() {
+        return maxLag.get();
+    }
+
+    boolean awaitIdle(final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (!permits.tryAcquire(capacity, timeout, unit)) return false;
+        permits.release(capacity);
+        return true;
+    }
+
+    void shutdown(final long timeout, final TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(timeout, unit))
+            LOGGER.log(Level.WARNING, "{0} build keeper evaluations were still queued at shutdown", getQueueDepth());
+    }
+
+    public static void terminate() throws InterruptedException {
+        final EvaluationQueue queue;
+        synchronized (EvaluationQueue.class) {
+            queue = instance;
+        }
+        if (queue != null) queue.shutdown(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    private static class Evaluation {
+
+        private final Runnable task;
+        private final long queued = System.currentTimeMillis();
+
+        Evaluation(final Runnable task) {
+            this.task = task;
+        }
+
+    }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Job;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * When kept builds stop being kept. Expiries are appended to one file per day under the Jenkins home, and a day's
+ * file is only read when that day arrives, into a delay queue served by a single timer. Starting up costs a directory
+ * listing plus the expiries that are already due, however many builds or later expiries there are.
+ *
+ * An expiry only releases a build that is still kept by the plugin, so expiries for builds that have since been
+ * deleted, released or kept by a user need not be cancelled.
+ */
+public class ExpirySchedule {
+
+    static final String DIRECTORY = "build-keeper-expiries";
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final Logger LOGGER = Logger.getLogger(ExpirySchedule.class.getName());
+
+    private static ExpirySchedule instance;
+
+    private final File directory;
+    private final TreeSet<Long> days = new TreeSet<Long>();
+    private final PriorityQueue<Expiry> queue = new PriorityQueue<Expiry>();
+    private final Map<Long, Integer> remaining = new HashMap<Long, Integer>();
+    private long loadedThrough = Long.MIN_VALUE;
+    private boolean started;
+    private ScheduledFuture<?> timer;
+    private long timerAt;
+
+    ExpirySchedule(final File directory) {
+        this.directory = directory;
+        final String[] names = directory.list();
+        if (names == null) return;
+        for (String name : names) {
+            try {
+                days.add(Long.parseLong(name));
+            } catch (NumberFormatException nfe) {
+                // not one of ours
+            }
+        }
+    }
+
+    public static synchronized ExpirySchedule get() {
+        if (instance == null) instance = new ExpirySchedule(new File(Jenkins.get().getRootDir(), DIRECTORY));
+        return instance;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void start() {
+        final ExpirySchedule schedule = get();
+        synchronized (schedule) {
+            schedule.started = true;
+        }
+        schedule.run();
+    }
+
+    public void schedule(final String job, final int number, final long time) {
+        synchronized (this) {
+            final Expiry expiry = new Expiry(time, number, job);
+            try {
+                append(expiry);
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Failed to save the expiry of " + job + " #" + number, ioe);
+                return;
+            }
+            if (expiry.getDay() <= loadedThrough) {
+                queue.add(expiry);
+                final Integer count = remaining.get(expiry.getDay());
+                remaining.put(expiry.getDay(), count == null ? 1 : count + 1);
+            } else {
+                days.add(expiry.getDay());
+            }
+        }
+        reschedule();
+    }
+
+    /**
+     * Release the builds that are due, then wait for the next.
+     */
+    void run() {
+        for (Expiry expiry : due(System.currentTimeMillis())) {
+            try {
+                release(expiry.job, expiry.number);
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Failed to release " + expiry.job + " #" + expiry.number, ioe);
+            } catch (RuntimeException re) {
+                LOGGER.log(Level.WARNING, "Failed to release " + expiry.job + " #" + expiry.number, re);
+            }
+            done(expiry);
+        }
+        reschedule();
+    }
+
+    protected void release(final String job, final int number) throws IOException {
+        final Job<?, ?> item = Jenkins.get().getItemByFullName(job, Job.class);
+        if ((item == null) || !PluginKeptBuilds.of(item).contains(number)) return;
+        final Run<?, ?> run = item.getBuildByNumber(number);
+        if ((run != null) && run.isKeepLog()) KeepLogWriter.keepLog(run, false);
+    }
+
+    /**
+     * @return the expiries due by now, which must each be passed to {@link #done} once released
+     */
+    synchronized List<Expiry> due(final long now) {
+        while (!days.isEmpty() && (days.first() * DAY <= now))
+            load(days.pollFirst());
+        final List<Expiry> due = new ArrayList<Expiry>();
+        while (!queue.isEmpty() && (queue.peek().time <= now))
+            due.add(queue.poll());
+        return due;
+    }
+
+    /**
+     * Forget an expiry that has been released, deleting its day once all of the day's expiries are released.
+     */
+    synchronized void done(final Expiry expiry) {
+        final Integer count = remaining.get(expiry.getDay());
+        if ((count == null) || (count > 1)) {
+            if (count != null) remaining.put(expiry.getDay(), count - 1);
+            return;
+        }
+        remaining.remove(expiry.getDay());
+        final File file = file(expiry.getDay());
+        if (file.exists() && !file.delete())
+            LOGGER.log(Level.WARNING, "Failed to delete {0}", file);
+    }
+
+    /**
+     * @return when the next expiry is due, or Long.MAX_VALUE if there are none
+     */
+    synchronized long next() {
+        long next = queue.isEmpty() ? Long.MAX_VALUE : queue.peek().time;
+        if (!days.isEmpty()) next = Math.min(next, days.first() * DAY);
+        return next;
+    }
+
+    synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    private synchronized void reschedule() {
+        if (!started) return;
+        final long next = next();
+        if (next == Long.MAX_VALUE) return;
+        if ((timer != null) && !timer.isDone()) {
+            if (timerAt <= next) return;
+            timer.cancel(false);
+        }
+        timerAt = next;
+        timer = Timer.get().schedule(new Runnable() {
+            public void run() {
+                ExpirySchedule.this.run();
+            }
+        }, Math.max(0, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private void load(final long day) {
+        loadedThrough = Math.max(loadedThrough, day);
+        final File file = file(day);
+        int count = 0;
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final Expiry expiry = Expiry.parse(line);
+                    if (expiry == null) continue;
+                    queue.add(expiry);
+                    count++;
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file, ioe);
+        }
+        if (count > 0) {
+            remaining.put(day, count);
+        } else if (file.exists() && !file.delete()) {
+            LOGGER.log(Level.WARNING, "Failed to delete {0}", file);
+        }
+    }
+
+    private void append(final Expiry expiry) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Unable to create " + directory);
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file(expiry.getDay()), true), StandardCharsets.UTF_8);
+        try {
+            writer.write(expiry.toString());
+            writer.write('\n');
+        } finally {
+            writer.close();
+        }
+    }
+
+    private File file(final long day) {
+        return new File(directory, Long.toString(day));
+    }
+
+    static class Expiry implements Comparable<Expiry> {
+
+        private final long time;
+        private final int number;
+        private final String job;
+
+        Expiry(final long time, final int number, final String job) {
+            this.time = time;
+            this.number = number;
+            this.job = job;
+        }
+
+        static Expiry parse(final String line) {
+            final String[] fields = line.split(" ", 3);
+            if (fields.length != 3) return null;
+            try {
+                return new Expiry(Long.parseLong(fields[0]), Integer.parseInt(fields[1]), fields[2]);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+
+        long getDay() {
+            return Math.floorDiv(time, DAY);
+        }
+
+        long getTime() {
+            return time;
+        }
+
+        int getNumber() {
+            return number;
+        }
+
+        String getJob() {
+            return job;
+        }
+
+        public int compareTo(final Expiry other) {
+            return time < other.time ? -1 : time == other.time ? 0 : 1;
+        }
+
+        @Override
+        public String toString() {
+            return time + " " + number + " " + job;
+        }
+
+    }
+
+}
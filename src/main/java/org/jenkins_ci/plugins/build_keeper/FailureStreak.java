@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Result;
+
+import java.util.TreeMap;
+
+/**
+ * The run of consecutive failed builds at the end of a job's history, folded forward one build at a time in build
+ * number order. Builds that complete before an earlier build are held until the earlier build completes.
+ */
+class FailureStreak {
+
+    private boolean seeded;
+    private int last;
+    private int length;
+    private int first;
+    private final TreeMap<Integer, Result> pending = new TreeMap<Integer, Result>();
+
+    /**
+     * @return the number of the first failed build if this completion makes the streak threshold long, otherwise 0
+     */
+    synchronized int completed(final BuildHistory history, final BuildRecord build, final int threshold) {
+        if (!seeded) seed(history, build, threshold);
+        if (build.getNumber() <= last) return 0;
+        pending.put(build.getNumber(), build.getResult());
+        int keep = 0;
+        while (!pending.isEmpty()) {
+            final int next = last + 1;
+            final boolean completed = pending.containsKey(next);
+            Result result = pending.remove(next);
+            if (!completed) {
+                final BuildRecord missing = history.getBuild(next);
+                if (missing == null) {
+                    last = next;
+                    continue;
+                }
+                result = missing.getResult();
+                if (result == null) break;
+            }
+            if (result == Result.FAILURE) {
+                if (length == 0) first = next;
+                if (length < Integer.MAX_VALUE) length++;
+                if (length == threshold) keep = first;
+            } else {
+                length = 0;
+                first = 0;
+            }
+            last = next;
+        }
+        return keep;
+    }
+
+    synchronized int getLength() {
+        return length;
+    }
+
+    synchronized int getFirst() {
+        return first;
+    }
+
+    private void seed(final BuildHistory history, final BuildRecord build, final int threshold) {
+        seeded = true;
+        last = build.getNumber() - 1;
+        BuildRecord previous = history.getPreviousBuild(build);
+        while ((previous != null) && (previous.getResult() == null)) {
+            last = previous.getNumber() - 1;
+            previous = history.getPreviousBuild(previous);
+        }
+        if (previous == null) return;
+        last = previous.getNumber();
+        while ((previous != null) && (previous.getResult() == Result.FAILURE) && (length <= threshold)) {
+            first = previous.getNumber();
+            length++;
+            previous = history.getPreviousBuild(previous);
+        }
+    }
+
+}
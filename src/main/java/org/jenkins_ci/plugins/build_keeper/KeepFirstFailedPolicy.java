@@ -25,17 +25,18 @@
 package org.jenkins_ci.plugins.build_keeper;
 
 import hudson.Extension;
-import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
-import hudson.model.Result;
-import hudson.model.Run;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class KeepFirstFailedPolicy extends BuildKeeperPolicy {
 
     private final int numberOfFails;
+    private transient Map<Object, FailureStreak> streaks;
 
     @DataBoundConstructor
     public KeepFirstFailedPolicy(int numberOfFails) {
@@ -47,17 +48,40 @@ public class KeepFirstFailedPolicy extends BuildKeeperPolicy {
     }
 
     @Override
-    public void apply(final AbstractBuild build, final BuildListener listener) throws IOException {
-        if ((build.getResult() == null) || (build.getResult() != Result.FAILURE)) return;
-        Run failed = build;
-        for (int i = 1; i < numberOfFails; i++) {
-            failed = failed.getPreviousBuild();
-            if (failed == null) return;
-            if ((failed.getResult() == null) || (failed.getResult() != Result.FAILURE)) return;
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
+        final int first = getStreak(history).completed(history, build, Math.max(1, numberOfFails));
+        if (first == 0) return;
+        final BuildRecord failed = first == build.getNumber() ? build : history.getBuild(first);
+        if (failed != null)
+            history.keepLog(failed, true);
+    }
+
+    @Override
+    void takeOver(final BuildKeeperPolicy previous) {
+        if (!(previous instanceof KeepFirstFailedPolicy)) return;
+        synchronized (previous) {
+            streaks = ((KeepFirstFailedPolicy) previous).streaks;
+        }
+    }
+
+    private FailureStreak getStreak(final BuildHistory history) {
+        synchronized (this) {
+            if (streaks == null)
+                streaks = Collections.synchronizedMap(new WeakHashMap<Object, FailureStreak>());
+        }
+        synchronized (streaks) {
+            FailureStreak streak = streaks.get(history.getStateKey());
+            if (streak == null) {
+                streak = new FailureStreak();
+                streaks.put(history.getStateKey(), streak);
+            }
+            return streak;
         }
-        final Run previous = failed.getPreviousBuild();
-        if ((previous == null) || ((previous.getResult() != Result.FAILURE)))
-            failed.keepLog(true);
+    }
+
+    @Override
+    public int getEvaluationCost() {
+        return 10;
     }
 
     @Extension
@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.BulkChange;
+import hudson.Extension;
+import hudson.init.Terminator;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sets the keep flag on a build straight away, but leaves saving build.xml to a background flush that saves a
+ * limited number of builds at a time. A build changed more than once before it is flushed is only saved once.
+ *
+ * Pending builds are held here until they are saved, so they cannot be evicted from the job and reloaded without
+ * the flag. A build deleted before it is flushed is dropped, as saving it would create its directory again.
+ */
+public class KeepLogWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(KeepLogWriter.class.getName());
+    private static final boolean ENABLED = SystemProperties.getBoolean(KeepLogWriter.class.getName() + ".enabled", true);
+    private static final long FLUSH_INTERVAL = SystemProperties.getLong(KeepLogWriter.class.getName() + ".flushInterval", 1000L);
+    private static final int MAX_SAVES_PER_FLUSH = SystemProperties.getInteger(KeepLogWriter.class.getName() + ".maxSavesPerFlush", 50);
+
+    private static final Set<Run<?, ?>> PENDING = new LinkedHashSet<Run<?, ?>>();
+    private static boolean scheduled;
+    private static boolean terminated;
+
+    private KeepLogWriter() { }
+
+    public static void keepLog(final Run<?, ?> run, final boolean keep) throws IOException {
+        final boolean wasKept = run.isKeepLog();
+        final boolean deferred;
+        synchronized (PENDING) {
+            deferred = ENABLED && !terminated;
+            if (deferred) {
+                final BulkChange bulkChange = new BulkChange(run);
+                try {
+                    run.keepLog(keep);
+                } finally {
+                    bulkChange.abort();
+                }
+                PENDING.add(run);
+                schedule();
+            }
+        }
+        if (!deferred) save(run, keep);
+        final KeptBuildIndex index = KeptBuildIndex.peek(run.getParent());
+        if (index != null) index.update(run.getNumber(), run.getTimeInMillis(), run.isKeepLog());
+        final BuildRecordFile records = BuildRecordFile.peek(run.getParent());
+        if (records != null) records.record(run);
+        PluginKeptBuilds.kept(run, wasKept);
+    }
+
+    private static void save(final Run<?, ?> run, final boolean keep) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            run.keepLog(keep);
+        } catch (IOException ioe) {
+            PolicyMetrics.get().saveFailed();
+            throw ioe;
+        }
+        PolicyMetrics.get().saved(System.nanoTime() - start);
+    }
+
+    public static int getPendingCount() {
+        synchronized (PENDING) {
+            return PENDING.size();
+        }
+    }
+
+    private static void schedule() {
+        if (scheduled) return;
+        scheduled = true;
+        Timer.get().schedule(new Runnable() {
+            public void run() {
+                flush(MAX_SAVES_PER_FLUSH);
+            }
+        }, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    static void flush(final int max) {
+        final List<Run<?, ?>> batch = new ArrayList<Run<?, ?>>();
+        synchronized (PENDING) {
+            final Iterator<Run<?, ?>> pending = PENDING.iterator();
+            while (pending.hasNext() && (batch.size() < max)) {
+                batch.add(pending.next());
+                pending.remove();
+            }
+        }
+        for (Run<?, ?> run : batch) {
+            if (!run.getRootDir().isDirectory()) continue;
+            final long start = System.nanoTime();
+            try {
+                run.save();
+                PolicyMetrics.get().saved(System.nanoTime() - start);
+            } catch (IOException ioe) {
+                PolicyMetrics.get().saveFailed();
+                LOGGER.log(Level.WARNING, "Failed to save keep forever for " + run.getFullDisplayName(), ioe);
+            }
+        }
+        synchronized (PENDING) {
+            scheduled = false;
+            if (!PENDING.isEmpty() && !terminated) schedule();
+        }
+    }
+
+    static void deleted(final Run<?, ?> run) {
+        synchronized (PENDING) {
+            PENDING.remove(run);
+        }
+    }
+
+    @Extension
+    public static class DeletedRunListener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onDeleted(final Run<?, ?> run) {
+            deleted(run);
+        }
+
+    }
+
+    @Terminator
+    public static void terminate() throws InterruptedException {
+        EvaluationQueue.terminate();
+        synchronized (PENDING) {
+            terminated = true;
+        }
+        flush(Integer.MAX_VALUE);
+    }
+
+}
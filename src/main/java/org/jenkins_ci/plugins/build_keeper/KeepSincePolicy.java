@@ -25,9 +25,7 @@
 package org.jenkins_ci.plugins.build_keeper;
 
 import hudson.Extension;
-import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
-import hudson.model.Run;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import java.io.IOException;
@@ -40,15 +38,17 @@ public class KeepSincePolicy extends PeriodAndFailedPolicy {
     }
 
     @Override
-    public void apply(final AbstractBuild build, final BuildListener listener) throws IOException {
-        Run current = build;
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
         final int loop = getBuildPeriod() > 0 ? getBuildPeriod() -1 : 0;
-        for (int i = 0; i < loop; i++) {
-            if (current.getPreviousBuild() == null) break;
-            if (current.getPreviousBuild().isKeepLog()) return;
-            current = current.getPreviousBuild();
-        }
-        keep(build);
+        final int number = build.getNumber();
+        final KeptBuildIndex kept = history.getKeptBuilds();
+        if (kept.isKeptBetween(number - loop, number) || kept.isKeptAfter(number, number + loop)) return;
+        keep(history, build);
+    }
+
+    @Override
+    public int getEvaluationCost() {
+        return 10;
     }
 
     @Extension
@@ -0,0 +1,519 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamedThreadFactory;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The builds kept by the plugin across all jobs, updated as the plugin keeps and releases them, so that they can be
+ * listed without loading the builds of any job. The entries are held newest first in one sorted set, with a sorted
+ * set per job, per policy type and per policy type of each job, so that the sets a query reads hold exactly the builds
+ * it asks for: the total is the sum of their sizes and a page only walks the entries before its end.
+ *
+ * Nothing is saved: after a restart the catalog is rebuilt on a thread of its own from the {@link PluginKeptBuilds} of
+ * each job that has a {@link BuildRecordFile}, as the plugin has never kept a build of a job without one, taking the
+ * policy type from the job's current configuration.
+ */
+public class KeptBuildCatalog {
+
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+    private static final Logger LOGGER = Logger.getLogger(KeptBuildCatalog.class.getName());
+    private static final KeptBuildCatalog INSTANCE = new KeptBuildCatalog();
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final NavigableSet<Entry> all = new TreeSet<Entry>();
+    private final TreeMap<String, NavigableSet<Entry>> byJob = new TreeMap<String, NavigableSet<Entry>>();
+    private final Map<String, NavigableSet<Entry>> byPolicy = new HashMap<String, NavigableSet<Entry>>();
+    private final Map<String, Map<String, NavigableSet<Entry>>> byJobPolicy = new HashMap<String, Map<String, NavigableSet<Entry>>>();
+    private volatile boolean loading;
+
+    public static KeptBuildCatalog get() {
+        return INSTANCE;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void load() {
+        INSTANCE.loading = true;
+        final ExecutorService executor =
+                Executors.newSingleThreadExecutor(new NamedThreadFactory(new DaemonThreadFactory(), "Build keeper catalog"));
+        executor.execute(new Runnable() {
+            public void run() {
+                INSTANCE.rebuild();
+            }
+        });
+        executor.shutdown();
+    }
+
+    void rebuild() {
+        try {
+            for (Job<?, ?> job : Jenkins.get().getAllItems(Job.class)) {
+                // opening the records of a job that has none would create them, and could only find nothing kept
+                if (!new File(job.getRootDir(), BuildRecordFile.FILE_NAME).exists()) continue;
+                final PluginKeptBuilds kept = PluginKeptBuilds.of(job);
+                final RunBuildHistory history = new RunBuildHistory(job);
+                final String policy = getPolicy(job);
+                for (int number : kept.getNumbers()) {
+                    final BuildRecord build = history.getBuild(number);
+                    // released since the numbers were read
+                    if ((build != null) && kept.contains(number))
+                        add(job.getFullName(), number, build.getTimestamp(), policy);
+                }
+            }
+        } catch (RuntimeException re) {
+            LOGGER.log(Level.WARNING, "Failed to load the catalog of kept builds", re);
+        } finally {
+            loading = false;
+        }
+    }
+
+    /**
+     * Record a change to the keep flag made by the plugin.
+     */
+    void update(final Run<?, ?> run, final boolean kept) {
+        final Job<?, ?> job = run.getParent();
+        if (kept) {
+            final BuildKeeperAction step = run.getAction(BuildKeeperAction.class);
+            final String policy = (step != null) && (step.getPolicy() != null) ? step.getPolicy().getClass().getSimpleName()
+                                                                                  : getPolicy(job);
+            add(job.getFullName(), run.getNumber(), run.getTimeInMillis(), policy);
+        } else {
+            remove(job.getFullName(), run.getNumber());
+        }
+    }
+
+    /**
+     * @return the simple class name of the job's policy, as in {@link PolicyMetrics}, or null if it has none
+     */
+    static String getPolicy(final Job<?, ?> job) {
+        final BuildKeeper keeper = BuildKeeper.of(job);
+        return (keeper == null) || (keeper.getPolicy() == null) ? null : keeper.getPolicy().getClass().getSimpleName();
+    }
+
+    synchronized void add(final String job, final int number, final long timestamp, final String policy) {
+        final Entry entry = new Entry(job, number, timestamp, policy);
+        final Entry previous = entries.put(entry.getKey(), entry);
+        if (previous != null) unindex(previous);
+        all.add(entry);
+        index(byJob, job, entry);
+        if (policy != null) {
+            index(byPolicy, policy, entry);
+            Map<String, NavigableSet<Entry>> jobPolicies = byJobPolicy.get(job);
+            if (jobPolicies == null) {
+                jobPolicies = new HashMap<String, NavigableSet<Entry>>();
+                byJobPolicy.put(job, jobPolicies);
+            }
+            index(jobPolicies, policy, entry);
+        }
+    }
+
+    synchronized void remove(final String job, final int number) {
+        final Entry entry = entries.remove(job + '#' + number);
+        if (entry != null) unindex(entry);
+    }
+
+    /**
+     * Move the entries of a job, or of every job in a folder, to a new name.
+     */
+    synchronized void move(final String oldName, final String newName) {
+        for (Entry entry : removeAll(oldName))
+            add(newName + entry.getJob().substring(oldName.length()), entry.getNumber(), entry.getTimestamp(), entry.getPolicy());
+    }
+
+    /**
+     * @return the entries removed for the job, or for every job in the folder
+     */
+    synchronized List<Entry> removeAll(final String name) {
+        final List<Entry> removed = new ArrayList<Entry>();
+        final NavigableSet<Entry> job = byJob.get(name);
+        if (job != null) removed.addAll(job);
+        for (NavigableSet<Entry> folderJob : byJob.subMap(name + '/', name + '0').values())
+            removed.addAll(folderJob);
+        for (Entry entry : removed)
+            remove(entry.getJob(), entry.getNumber());
+        return removed;
+    }
+
+    private void unindex(final Entry entry) {
+        all.remove(entry);
+        unindex(byJob, entry.getJob(), entry);
+        if (entry.getPolicy() != null) {
+            unindex(byPolicy, entry.getPolicy(), entry);
+            final Map<String, NavigableSet<Entry>> jobPolicies = byJobPolicy.get(entry.getJob());
+            if (jobPolicies != null) {
+                unindex(jobPolicies, entry.getPolicy(), entry);
+                if (jobPolicies.isEmpty()) byJobPolicy.remove(entry.getJob());
+            }
+        }
+    }
+
+    private static void index(final Map<String, NavigableSet<Entry>> index, final String key, final Entry entry) {
+        NavigableSet<Entry> set = index.get(key);
+        if (set == null) {
+            set = new TreeSet<Entry>();
+            index.put(key, set);
+        }
+        set.add(entry);
+    }
+
+    private static void unindex(final Map<String, NavigableSet<Entry>> index, final String key, final Entry entry) {
+        final NavigableSet<Entry> set = index.get(key);
+        if (set == null) return;
+        set.remove(entry);
+        if (set.isEmpty()) index.remove(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * @return the policy types that have kept builds, in name order
+     */
+    public synchronized List<String> getPolicies() {
+        return new ArrayList<String>(new TreeSet<String>(byPolicy.keySet()));
+    }
+
+    /**
+     * @return the page of kept builds that match the query, newest first
+     */
+    public synchronized Page query(final Query query, final long now) {
+        final List<NavigableSet<Entry>> sources = new ArrayList<NavigableSet<Entry>>();
+        if (query.job != null) {
+            if ((query.folder == null) || query.job.startsWith(query.folder + '/')) add(sources, query.job, query.policy);
+        } else if (query.folder != null) {
+            for (String job : byJob.subMap(query.folder + '/', query.folder + '0').keySet())
+                add(sources, job, query.policy);
+        } else if (query.policy != null) {
+            if (byPolicy.containsKey(query.policy)) sources.add(byPolicy.get(query.policy));
+        } else {
+            sources.add(all);
+        }
+        final boolean bounded = (query.minAge > 0) || (query.maxAge > 0);
+        final List<NavigableSet<Entry>> ranges = new ArrayList<NavigableSet<Entry>>();
+        int total = 0;
+        for (NavigableSet<Entry> source : sources) {
+            final NavigableSet<Entry> range = bounded ? range(source, query, now) : source;
+            ranges.add(range);
+            // the size of a whole set is kept as it changes, a range of ages only counts the entries within it
+            total += range.size();
+        }
+        final List<Entry> builds = new ArrayList<Entry>();
+        final Iterator<Entry> matching = merge(ranges);
+        for (int skipped = 0; (skipped < query.start) && matching.hasNext(); skipped++)
+            matching.next();
+        while ((builds.size() < query.limit) && matching.hasNext())
+            builds.add(matching.next());
+        return new Page(query, builds, total, loading);
+    }
+
+    /**
+     * Add the set of the job's entries for the policy, or all of its entries if the policy is null.
+     */
+    private void add(final List<NavigableSet<Entry>> sources, final String job, final String policy) {
+        final NavigableSet<Entry> set;
+        if (policy == null) {
+            set = byJob.get(job);
+        } else {
+            final Map<String, NavigableSet<Entry>> jobPolicies = byJobPolicy.get(job);
+            set = jobPolicies == null ? null : jobPolicies.get(policy);
+        }
+        if (set != null) sources.add(set);
+    }
+
+    /**
+     * @return the entries of the set kept within the ages asked for
+     */
+    static NavigableSet<Entry> range(final NavigableSet<Entry> set, final Query query, final long now) {
+        final long newest = query.minAge > 0 ? now - query.minAge : Long.MAX_VALUE;
+        if (query.maxAge <= 0) return set.tailSet(Entry.probe(newest), true);
+        final long oldest = now - query.maxAge;
+        if (oldest > newest) return Collections.<Entry>emptyNavigableSet();
+        return set.subSet(Entry.probe(newest), true, Entry.probe(oldest - 1), false);
+    }
+
+    /**
+     * @return the entries of the sets in catalog order, as though they were one set
+     */
+    static Iterator<Entry> merge(final List<NavigableSet<Entry>> sets) {
+        if (sets.size() == 1) return sets.get(0).iterator();
+        final PriorityQueue<Cursor> cursors = new PriorityQueue<Cursor>();
+        for (NavigableSet<Entry> set : sets) {
+            final Cursor cursor = new Cursor(set.iterator());
+            if (cursor.advance()) cursors.add(cursor);
+        }
+        return new Iterator<Entry>() {
+            public boolean hasNext() {
+                return !cursors.isEmpty();
+            }
+
+            public Entry next() {
+                final Cursor cursor = cursors.remove();
+                final Entry entry = cursor.head;
+                if (cursor.advance()) cursors.add(cursor);
+                return entry;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static class Cursor implements Comparable<Cursor> {
+
+        private final Iterator<Entry> rest;
+        private Entry head;
+
+        Cursor(final Iterator<Entry> rest) {
+            this.rest = rest;
+        }
+
+        boolean advance() {
+            head = rest.hasNext() ? rest.next() : null;
+            return head != null;
+        }
+
+        public int compareTo(final Cursor other) {
+            return head.compareTo(other.head);
+        }
+
+    }
+
+    /**
+     * What to list: each filter that is set must match, ages are in milliseconds and 0 when not bounded.
+     */
+    public static class Query {
+
+        String job;
+        String folder;
+        String policy;
+        long minAge;
+        long maxAge;
+        int start;
+        int limit = DEFAULT_LIMIT;
+
+        /**
+         * @return the query string that asks for the same builds from another start
+         */
+        String toQueryString(final int from) {
+            final StringBuilder query = new StringBuilder("?start=").append(from).append("&limit=").append(limit);
+            append(query, "job", job);
+            append(query, "folder", folder);
+            append(query, "policy", policy);
+            if (minAge > 0) append(query, "minAge", Long.toString(TimeUnit.MILLISECONDS.toDays(minAge)));
+            if (maxAge > 0) append(query, "maxAge", Long.toString(TimeUnit.MILLISECONDS.toDays(maxAge)));
+            return query.toString();
+        }
+
+        private static void append(final StringBuilder query, final String name, final String value) {
+            if (value == null) return;
+            try {
+                query.append('&').append(name).append('=').append(URLEncoder.encode(value, "UTF-8"));
+            } catch (UnsupportedEncodingException uee) {
+                throw new IllegalStateException(uee);
+            }
+        }
+
+    }
+
+    @ExportedBean
+    public static class Page {
+
+        private final Query query;
+        private final List<Entry> builds;
+        private final int total;
+        private final boolean loading;
+
+        Page(final Query query, final List<Entry> builds, final int total, final boolean loading) {
+            this.query = query;
+            this.builds = builds;
+            this.total = total;
+            this.loading = loading;
+        }
+
+        @Exported
+        public List<Entry> getBuilds() {
+            return builds;
+        }
+
+        @Exported
+        public int getTotal() {
+            return total;
+        }
+
+        @Exported
+        public int getStart() {
+            return query.start;
+        }
+
+        @Exported
+        public int getLimit() {
+            return query.limit;
+        }
+
+        /**
+         * @return true if the catalog was still being rebuilt after a restart, so builds may be missing
+         */
+        @Exported
+        public boolean isLoading() {
+            return loading;
+        }
+
+        public String getPreviousPage() {
+            return query.start > 0 ? query.toQueryString(Math.max(0, query.start - query.limit)) : null;
+        }
+
+        public String getNextPage() {
+            return query.start + query.limit < total ? query.toQueryString(query.start + query.limit) : null;
+        }
+
+    }
+
+    /**
+     * A kept build, ordered newest first.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static class Entry implements Comparable<Entry> {
+
+        private final String job;
+        private final int number;
+        private final long timestamp;
+        private final String policy;
+
+        Entry(final String job, final int number, final long timestamp, final String policy) {
+            this.job = job;
+            this.number = number;
+            this.timestamp = timestamp;
+            this.policy = policy;
+        }
+
+        /**
+         * @return an entry that comes before every build at the time and after every build later than it
+         */
+        static Entry probe(final long timestamp) {
+            return new Entry("", Integer.MAX_VALUE, timestamp, null);
+        }
+
+        String getKey() {
+            return job + '#' + number;
+        }
+
+        @Exported
+        public String getJob() {
+            return job;
+        }
+
+        @Exported
+        public int getNumber() {
+            return number;
+        }
+
+        @Exported
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public Date getTime() {
+            return new Date(timestamp);
+        }
+
+        @Exported
+        public String getPolicy() {
+            return policy;
+        }
+
+        /**
+         * @return the URL of the build, relative to the root of Jenkins
+         */
+        @Exported
+        public String getUrl() {
+            final StringBuilder url = new StringBuilder();
+            for (String name : job.split("/"))
+                url.append("job/").append(Util.rawEncode(name)).append('/');
+            return url.append(number).append('/').toString();
+        }
+
+        public int compareTo(final Entry other) {
+            if (timestamp != other.timestamp) return timestamp > other.timestamp ? -1 : 1;
+            final int byJob = job.compareTo(other.job);
+            if (byJob != 0) return byJob;
+            return number == other.number ? 0 : (number > other.number ? -1 : 1);
+        }
+
+    }
+
+    @Extension
+    public static class CatalogItemListener extends ItemListener {
+
+        @Override
+        public void onDeleted(final Item item) {
+            get().removeAll(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(final Item item, final String oldFullName, final String newFullName) {
+            get().move(oldFullName, newFullName);
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Api;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists the builds in the {@link KeptBuildCatalog}, a page at a time, which can also be read from api/json under the
+ * same URL. The query parameters job, folder and policy filter by full name and policy type, minAge and maxAge by
+ * age in days, and start and limit pick the page.
+ */
+@Extension
+public class KeptBuildCatalogLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "folder.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.keptBuildCatalog_displayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.keptBuildCatalog_description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "build-keeper-catalog";
+    }
+
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.ADMINISTER;
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.STATUS;
+    }
+
+    public KeptBuildCatalog getCatalog() {
+        return KeptBuildCatalog.get();
+    }
+
+    public KeptBuildCatalog.Page getPage() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        return KeptBuildCatalog.get().query(toQuery(Stapler.getCurrentRequest()), System.currentTimeMillis());
+    }
+
+    public Api getApi() {
+        return new Api(getPage());
+    }
+
+    static KeptBuildCatalog.Query toQuery(final StaplerRequest request) {
+        final KeptBuildCatalog.Query query = new KeptBuildCatalog.Query();
+        query.job = Util.fixEmptyAndTrim(request.getParameter("job"));
+        query.folder = Util.fixEmptyAndTrim(request.getParameter("folder"));
+        query.policy = Util.fixEmptyAndTrim(request.getParameter("policy"));
+        query.minAge = TimeUnit.DAYS.toMillis(parse(request.getParameter("minAge"), 0));
+        query.maxAge = TimeUnit.DAYS.toMillis(parse(request.getParameter("maxAge"), 0));
+        query.start = parse(request.getParameter("start"), 0);
+        query.limit = Math.min(Math.max(1, parse(request.getParameter("limit"), KeptBuildCatalog.DEFAULT_LIMIT)), KeptBuildCatalog.MAX_LIMIT);
+        return query;
+    }
+
+    private static int parse(final String value, final int defaultValue) {
+        try {
+            return value == null ? defaultValue : Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * In memory index of the kept builds of a job, so that policies can find the last kept build without walking the
+ * build history.
+ */
+public class KeptBuildIndex {
+
+    private static final Map<Job<?, ?>, KeptBuildIndex> INDEXES =
+                                                    Collections.synchronizedMap(new WeakHashMap<Job<?, ?>, KeptBuildIndex>());
+
+    private int[] numbers = new int[8];
+    private long[] timestamps = new long[8];
+    private int size;
+    private boolean loaded;
+
+    public static KeptBuildIndex of(final Job<?, ?> job) {
+        return of(job, null);
+    }
+
+    /**
+     * @param history the history to load the index through if it is not loaded yet, so that the builds loaded are
+     *                counted against the evaluation that needed them, or null to load it through a history of its own
+     */
+    static KeptBuildIndex of(final Job<?, ?> job, final BuildHistory history) {
+        KeptBuildIndex index;
+        synchronized (INDEXES) {
+            index = INDEXES.get(job);
+            if (index == null) {
+                index = new KeptBuildIndex();
+                INDEXES.put(job, index);
+            }
+        }
+        index.load(job, history);
+        return index;
+    }
+
+    static KeptBuildIndex peek(final Job<?, ?> job) {
+        return INDEXES.get(job);
+    }
+
+    private synchronized void load(final Job<?, ?> job, final BuildHistory through) {
+        if (loaded) return;
+        final BuildHistory history = through != null ? through : new RunBuildHistory(job);
+        for (BuildRecord record = history.getLastBuild(); record != null; record = history.getPreviousBuild(record)) {
+            if (record.isKeepLog())
+                update(record.getNumber(), record.getTimestamp(), true);
+        }
+        loaded = true;
+    }
+
+    public synchronized void update(final int number, final long timestamp, final boolean kept) {
+        final int position = find(number);
+        if (kept) {
+            if (position >= 0) {
+                timestamps[position] = timestamp;
+            } else {
+                insert(-position - 1, number, timestamp);
+            }
+        } else if (position >= 0) {
+            remove(position);
+        }
+    }
+
+    /**
+     * @return an index that starts with the same kept builds, but is not updated when builds are kept
+     */
+    synchronized KeptBuildIndex copy() {
+        final KeptBuildIndex copy = new KeptBuildIndex();
+        copy.numbers = Arrays.copyOf(numbers, numbers.length);
+        copy.timestamps = Arrays.copyOf(timestamps, timestamps.length);
+        copy.size = size;
+        copy.loaded = true;
+        return copy;
+    }
+
+    public synchronized int getLastKeptNumber() {
+        return size == 0 ? 0 : numbers[size - 1];
+    }
+
+    public synchronized long getLastKeptTimestamp() {
+        return size == 0 ? 0 : timestamps[size - 1];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isKept(final int number) {
+        return find(number) >= 0;
+    }
+
+    /**
+     * @return true if a build numbered from (inclusive) up to before (exclusive) is kept
+     */
+    public synchronized boolean isKeptBetween(final int from, final int before) {
+        final int floor = floor(before);
+        return (floor >= 0) && (numbers[floor] >= from);
+    }
+
+    /**
+     * @return true if the last kept build numbered before (exclusive) started at or after the timestamp
+     */
+    public synchronized boolean isKeptSince(final long timestamp, final int before) {
+        final int floor = floor(before);
+        return (floor >= 0) && (timestamps[floor] >= timestamp);
+    }
+
+    /**
+     * @return true if a build numbered after (exclusive) up to to (inclusive) is kept, which happens when a later
+     *         build finished first
+     */
+    public synchronized boolean isKeptAfter(final int after, final int to) {
+        final int ceiling = ceiling(after);
+        return (ceiling < size) && (numbers[ceiling] <= to);
+    }
+
+    /**
+     * @return when the first kept build numbered after (exclusive) started, or Long.MAX_VALUE if there is none
+     */
+    public synchronized long getNextKeptTimestamp(final int after) {
+        final int ceiling = ceiling(after);
+        return ceiling < size ? timestamps[ceiling] : Long.MAX_VALUE;
+    }
+
+    private int ceiling(final int after) {
+        final int position = find(after);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    private int floor(final int before) {
+        if (size == 0) return -1;
+        if (numbers[size - 1] < before) return size - 1;
+        final int position = find(before);
+        return (position >= 0 ? position : -position - 1) - 1;
+    }
+
+    private int find(final int number) {
+        if ((size > 0) && (numbers[size - 1] == number)) return size - 1;
+        return Arrays.binarySearch(numbers, 0, size, number);
+    }
+
+    private void insert(final int position, final int number, final long timestamp) {
+        if (size == numbers.length) {
+            numbers = Arrays.copyOf(numbers, size * 2);
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+        }
+        System.arraycopy(numbers, position, numbers, position + 1, size - position);
+        System.arraycopy(timestamps, position, timestamps, position + 1, size - position);
+        numbers[position] = number;
+        timestamps[position] = timestamp;
+        size++;
+    }
+
+    private void remove(final int position) {
+        System.arraycopy(numbers, position + 1, numbers, position, size - position - 1);
+        System.arraycopy(timestamps, position + 1, timestamps, position, size - position - 1);
+        size--;
+    }
+
+    @Extension
+    public static class KeepLogListener extends SaveableListener {
+
+        @Override
+        public void onChange(final Saveable o, final XmlFile file) {
+            if (!(o instanceof Run)) return;
+            final Run<?, ?> run = (Run<?, ?>) o;
+            final KeptBuildIndex index = peek(run.getParent());
+            if (index != null)
+                index.update(run.getNumber(), run.getTimeInMillis(), run.isKeepLog());
+        }
+
+    }
+
+    @Extension
+    public static class DeletedRunListener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onDeleted(final Run<?, ?> run) {
+            final KeptBuildIndex index = peek(run.getParent());
+            if (index != null)
+                index.update(run.getNumber(), run.getTimeInMillis(), false);
+        }
+
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.XmlFile;
+import hudson.model.Job;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The build kept for each distinct combination of parameter values of a job, so that a completion finds the build it
+ * replaces with one lookup.
+ *
+ * Saved with the job, so the policy only ever releases builds that it kept. When the parameter names change, the
+ * index is rebuilt from the builds it held, which is a lookup of the parameters of each of them rather than a walk of
+ * the history.
+ */
+class ParameterIndex {
+
+    static final String FILE_NAME = "build-keeper-parameters.xml";
+
+    private static final Logger LOGGER = Logger.getLogger(ParameterIndex.class.getName());
+    private static final Map<Object, ParameterIndex> INDEXES = Collections.synchronizedMap(new WeakHashMap<Object, ParameterIndex>());
+
+    private final List<String> names;
+    private final Map<String, Integer> kept = new HashMap<String, Integer>();
+    private transient XmlFile file;
+
+    ParameterIndex(final List<String> names) {
+        this.names = new ArrayList<String>(names);
+    }
+
+    /**
+     * @return the index of the history for the parameter names, rebuilt if the names have changed
+     */
+    static ParameterIndex of(final BuildHistory history, final List<String> names) throws IOException {
+        final Object key = history.getKey();
+        ParameterIndex index = INDEXES.get(key);
+        if (index == null) index = load(key);
+        if (index.names.equals(names)) {
+            synchronized (INDEXES) {
+                // another completion may have loaded or rebuilt it first
+                final ParameterIndex current = INDEXES.get(key);
+                if (current != null) return current;
+                INDEXES.put(key, index);
+                return index;
+            }
+        }
+        // loading the builds can take a while, and other jobs need not wait for it
+        final ParameterIndex rebuilt = index.rebuild(history, names);
+        synchronized (INDEXES) {
+            final ParameterIndex current = INDEXES.get(key);
+            if ((current != null) && current.names.equals(names)) return current;
+            INDEXES.put(key, rebuilt);
+        }
+        rebuilt.save();
+        return rebuilt;
+    }
+
+    private static ParameterIndex load(final Object key) {
+        if (!(key instanceof Job)) return new ParameterIndex(Collections.<String>emptyList());
+        final XmlFile file = new XmlFile(new File(((Job<?, ?>) key).getRootDir(), FILE_NAME));
+        ParameterIndex index = null;
+        if (file.exists()) {
+            try {
+                index = (ParameterIndex) file.read();
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Failed to read " + file.getFile() + ", builds it kept will not be released", ioe);
+            } catch (ClassCastException cce) {
+                LOGGER.log(Level.WARNING, "Unexpected content in " + file.getFile(), cce);
+            }
+        }
+        if (index == null) index = new ParameterIndex(Collections.<String>emptyList());
+        index.file = file;
+        return index;
+    }
+
+    /**
+     * @return an index for the names of the builds this index holds that the plugin still keeps
+     */
+    private ParameterIndex rebuild(final BuildHistory history, final List<String> names) throws IOException {
+        final ParameterIndex rebuilt = new ParameterIndex(names);
+        rebuilt.file = file;
+        final PluginKeptBuilds pluginKept = history.getPluginKeptBuilds();
+        for (int number : getNumbers()) {
+            if (!pluginKept.contains(number)) continue;
+            final BuildRecord build = history.getBuild(number);
+            if (build != null) rebuilt.put(rebuilt.key(history, build), number);
+        }
+        return rebuilt;
+    }
+
+    /**
+     * @return the values of the build's parameters, each prefixed by its length so that no two combinations match
+     */
+    String key(final BuildHistory history, final BuildRecord build) {
+        final StringBuilder key = new StringBuilder();
+        for (String name : names) {
+            final String value = history.getParameter(build, name);
+            if (value == null) {
+                key.append("-;");
+            } else {
+                key.append(value.length()).append(':').append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    synchronized int get(final String key) {
+        final Integer number = kept.get(key);
+        return number == null ? 0 : number;
+    }
+
+    /**
+     * @return the build that was kept for the values before, or 0 if there was none
+     */
+    synchronized int put(final String key, final int number) {
+        final Integer previous = kept.get(key);
+        if ((previous == null) || (previous < number)) {
+            kept.put(key, number);
+            return previous == null ? 0 : previous;
+        }
+        return 0;
+    }
+
+    synchronized void remove(final String key, final int number) {
+        final Integer current = kept.get(key);
+        if ((current != null) && (current == number)) kept.remove(key);
+    }
+
+    synchronized int size() {
+        return kept.size();
+    }
+
+    synchronized int[] getNumbers() {
+        final int[] numbers = new int[kept.size()];
+        int i = 0;
+        for (int number : kept.values())
+            numbers[i++] = number;
+        return numbers;
+    }
+
+    synchronized void save() {
+        if (file == null) return;
+        try {
+            file.write(this);
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Failed to save " + file.getFile(), ioe);
+        }
+    }
+
+}
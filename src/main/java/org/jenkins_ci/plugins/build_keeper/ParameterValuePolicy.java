@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import hudson.util.FormValidation;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the latest successful build for each distinct combination of values of the chosen parameters, such as the
+ * target environment or branch, releasing the build it kept for those values before.
+ */
+public class ParameterValuePolicy extends BuildKeeperPolicy {
+
+    private final String parameters;
+    private transient List<String> names;
+
+    @DataBoundConstructor
+    public ParameterValuePolicy(final String parameters) {
+        this.parameters = Util.fixNull(parameters).trim();
+    }
+
+    public String getParameters() {
+        return parameters;
+    }
+
+    List<String> getNames() {
+        if (names == null) names = split(parameters);
+        return names;
+    }
+
+    @Override
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
+        if ((build.getResult() != Result.SUCCESS) || getNames().isEmpty()) return;
+        final ParameterIndex index = ParameterIndex.of(history, getNames());
+        synchronized (index) {
+            final String key = index.key(history, build);
+            int previous = index.get(key);
+            // released or deleted since
+            if ((previous != 0) && !history.getPluginKeptBuilds().contains(previous)) {
+                index.remove(key, previous);
+                previous = 0;
+            }
+            // a later build with the same values finished first
+            if (previous >= build.getNumber()) return;
+            history.keepLog(build, true);
+            index.put(key, build.getNumber());
+            index.save();
+            if (previous == 0) return;
+            final BuildRecord released = history.getBuild(previous);
+            if ((released != null) && released.isKeepLog()) history.keepLog(released, false);
+        }
+    }
+
+    @Override
+    public int getEvaluationCost() {
+        return 10;
+    }
+
+    static List<String> split(final String parameters) {
+        final List<String> names = new ArrayList<String>();
+        for (String name : Util.fixNull(parameters).split("[,\\s]+")) {
+            if (name.length() > 0) names.add(name);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    @Extension
+    public static class ParameterValuePolicyDescriptor extends BuildKeeperPolicyDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.parameterValuePolicy_displayName();
+        }
+
+        public FormValidation doCheckParameters(@QueryParameter final String value) {
+            if (split(value).isEmpty()) return FormValidation.error(Messages.parameterValuePolicy_noParameters());
+            return FormValidation.ok();
+        }
+
+    }
+
+}
@@ -25,16 +25,18 @@
 package org.jenkins_ci.plugins.build_keeper;
 
 import hudson.model.Result;
-import hudson.model.Run;
 import hudson.util.FormValidation;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 public abstract class PeriodAndFailedPolicy extends BuildKeeperPolicy {
     
     private int buildPeriod;
     private boolean dontKeepFailed;
+    private int expireAfterDays;
 
     public PeriodAndFailedPolicy(final int buildPeriod, final boolean dontKeepFailed) {
         this.buildPeriod = buildPeriod;
@@ -53,10 +55,28 @@ public abstract class PeriodAndFailedPolicy extends BuildKeeperPolicy {
         return !dontKeepFailed;
     }
 
-    final void keep(final Run run) throws IOException {
-        final Result result = run.getResult();
-        if (isKeepFailed() || ((result != null) && result.isBetterThan(Result.FAILURE)))
-            run.keepLog();
+    public int getExpireAfterDays() {
+        return expireAfterDays;
+    }
+
+    /**
+     * @param expireAfterDays how many days after a build started it stops being kept, or 0 to keep it for good
+     */
+    @DataBoundSetter
+    public void setExpireAfterDays(final int expireAfterDays) {
+        this.expireAfterDays = Math.max(0, expireAfterDays);
+    }
+
+    final void keep(final BuildHistory history, final BuildRecord build) throws IOException {
+        if (!isKeepable(build)) return;
+        history.keepLog(build, true);
+        if (expireAfterDays > 0)
+            history.expireAt(build, build.getTimestamp() + TimeUnit.DAYS.toMillis(expireAfterDays));
+    }
+
+    final boolean isKeepable(final BuildRecord build) {
+        final Result result = build.getResult();
+        return isKeepFailed() || ((result != null) && result.isBetterThan(Result.FAILURE));
     }
 
     public static abstract class PeriodAndFailedPolicyDescriptor extends BuildKeeperPolicyDescriptor {
@@ -71,6 +91,10 @@ public abstract class PeriodAndFailedPolicy extends BuildKeeperPolicy {
             return FormValidation.validatePositiveInteger(value);
         }
 
+        public FormValidation doCheckExpireAfterDays(@QueryParameter final String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
         public int getDefaultBuildPeriod() {
             return 10;
         }
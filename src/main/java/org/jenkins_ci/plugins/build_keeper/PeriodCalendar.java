@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where hours, days, weeks and months start in a time zone. Dates are worked out on epoch days with primitive
+ * arithmetic; the zone is only consulted when a timestamp falls outside the offset, or a period starts on a day, that
+ * was last looked up, so evaluating builds in time order does not allocate.
+ */
+public final class PeriodCalendar {
+
+    public enum Unit {
+
+        HOURS, DAYS, WEEKS, MONTHS;
+
+        public String getDisplayName() {
+            switch (this) {
+                case HOURS: return Messages.periodCalendar_unit_hours();
+                case DAYS: return Messages.periodCalendar_unit_days();
+                case WEEKS: return Messages.periodCalendar_unit_weeks();
+                default: return Messages.periodCalendar_unit_months();
+            }
+        }
+
+    }
+
+    static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+    private volatile Offset offset;
+    private volatile DayStart dayStart;
+
+    public PeriodCalendar(final ZoneId zone) {
+        this.zone = zone;
+        this.rules = zone.getRules();
+        if (rules.isFixedOffset())
+            offset = new Offset(Long.MIN_VALUE, Long.MAX_VALUE, rules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000L);
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * @return the start of the period, counting back periods - 1 whole units from the one the timestamp is in
+     */
+    public long getStart(final Unit unit, final long timestamp, final int periods) {
+        final int back = Math.max(0, periods - 1);
+        switch (unit) {
+            case HOURS:
+                final long offsetMillis = getOffset(timestamp);
+                return Math.floorDiv(timestamp + offsetMillis, HOUR) * HOUR - offsetMillis - back * HOUR;
+            case DAYS:
+                return getStartOfDay(toEpochDay(timestamp) - back);
+            case WEEKS:
+                return getStartOfDay(toEpochWeek(timestamp) * 7 - 3 - back * 7L);
+            default:
+                final long month = toEpochMonth(timestamp) - back;
+                return getStartOfDay(daysFromCivil(Math.floorDiv(month, 12), (int) Math.floorMod(month, 12) + 1, 1));
+        }
+    }
+
+    public long toEpochDay(final long timestamp) {
+        return Math.floorDiv(timestamp + getOffset(timestamp), DAY);
+    }
+
+    /**
+     * @return weeks since the one containing day 0, starting on Mondays
+     */
+    public long toEpochWeek(final long timestamp) {
+        // day 0 was a Thursday
+        return Math.floorDiv(toEpochDay(timestamp) + 3, 7);
+    }
+
+    /**
+     * @return the year times 12 plus the zero based month
+     */
+    public long toEpochMonth(final long timestamp) {
+        final long z = toEpochDay(timestamp) + 719468;
+        final long era = Math.floorDiv(z, 146097);
+        final long doe = z - era * 146097;
+        final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final long mp = (5 * doy + 2) / 153;
+        final long month = mp < 10 ? mp + 2 : mp - 10;
+        final long year = yoe + era * 400 + (month < 2 ? 1 : 0);
+        return year * 12 + month;
+    }
+
+    /**
+     * @return the first instant of the day, which is not midnight where a transition skips midnight
+     */
+    public long getStartOfDay(final long epochDay) {
+        final DayStart cached = dayStart;
+        if ((cached != null) && (cached.epochDay == epochDay)) return cached.start;
+        final long start = LocalDate.ofEpochDay(epochDay).atStartOfDay(zone).toInstant().toEpochMilli();
+        dayStart = new DayStart(epochDay, start);
+        return start;
+    }
+
+    long getOffset(final long timestamp) {
+        final Offset cached = offset;
+        if ((cached != null) && (timestamp >= cached.from) && (timestamp < cached.to)) return cached.millis;
+        final Instant instant = Instant.ofEpochMilli(timestamp);
+        // transitions fall on whole seconds, so this finds one at the timestamp itself
+        final ZoneOffsetTransition previous = rules.previousTransition(Instant.ofEpochMilli(timestamp + 1));
+        final ZoneOffsetTransition next = rules.nextTransition(instant);
+        final Offset found = new Offset(previous == null ? Long.MIN_VALUE : previous.toEpochSecond() * 1000,
+                                        next == null ? Long.MAX_VALUE : next.toEpochSecond() * 1000,
+                                        rules.getOffset(instant).getTotalSeconds() * 1000L);
+        offset = found;
+        return found.millis;
+    }
+
+    static long daysFromCivil(final long year, final int month, final int day) {
+        final long y = month <= 2 ? year - 1 : year;
+        final long era = Math.floorDiv(y, 400);
+        final long yoe = y - era * 400;
+        final long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static final class Offset {
+
+        private final long from;
+        private final long to;
+        private final long millis;
+
+        private Offset(final long from, final long to, final long millis) {
+            this.from = from;
+            this.to = to;
+            this.millis = millis;
+        }
+
+    }
+
+    private static final class DayStart {
+
+        private final long epochDay;
+        private final long start;
+
+        private DayStart(final long epochDay, final long start) {
+            this.epochDay = epochDay;
+            this.start = start;
+        }
+
+    }
+
+}
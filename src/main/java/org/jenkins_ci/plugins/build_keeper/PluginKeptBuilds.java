@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+/**
+ * The builds of a job that the plugin kept, as opposed to builds a user kept, oldest first, so that the oldest can
+ * be released when there are more than a policy allows. Loaded from the marks in the {@link BuildRecordFile}, where
+ * the builds that changed while the file was closed are loaded to see whether they are still kept.
+ */
+public class PluginKeptBuilds {
+
+    private static final Map<Job<?, ?>, PluginKeptBuilds> KEPT =
+                                                    Collections.synchronizedMap(new WeakHashMap<Job<?, ?>, PluginKeptBuilds>());
+
+    private final TreeSet<Integer> numbers = new TreeSet<Integer>();
+
+    public static PluginKeptBuilds of(final Job<?, ?> job) {
+        PluginKeptBuilds kept = KEPT.get(job);
+        if (kept != null) return kept;
+        // loading the builds that changed while the file was closed is slow, so it is done outside the lock
+        final BuildRecordFile records = BuildRecordFile.of(job);
+        if (records != null) {
+            for (int number : records.getStaleKeptByPlugin()) {
+                final Run<?, ?> run = job.getBuildByNumber(number);
+                if (run == null) {
+                    records.remove(number);
+                } else {
+                    records.record(run);
+                }
+            }
+        }
+        synchronized (KEPT) {
+            kept = KEPT.get(job);
+            if (kept == null) {
+                kept = new PluginKeptBuilds();
+                // the marks are read under the lock, so a build kept or released while loading is not missed
+                if (records != null) kept.numbers.addAll(records.getKeptByPlugin());
+                KEPT.put(job, kept);
+            }
+            return kept;
+        }
+    }
+
+    static PluginKeptBuilds peek(final Job<?, ?> job) {
+        return KEPT.get(job);
+    }
+
+    public synchronized void update(final int number, final boolean kept) {
+        if (kept) {
+            numbers.add(number);
+        } else {
+            numbers.remove(number);
+        }
+    }
+
+    public synchronized int size() {
+        return numbers.size();
+    }
+
+    public synchronized boolean contains(final int number) {
+        return numbers.contains(number);
+    }
+
+    /**
+     * @return the numbers of the kept builds, oldest first
+     */
+    public synchronized List<Integer> getNumbers() {
+        return new ArrayList<Integer>(numbers);
+    }
+
+    /**
+     * @return the oldest builds over the maximum, which are no longer counted as kept by the plugin
+     */
+    synchronized List<Integer> overflow(final int max) {
+        final List<Integer> released = new ArrayList<Integer>();
+        while (numbers.size() > max)
+            released.add(numbers.pollFirst());
+        return released;
+    }
+
+    /**
+     * Release the oldest builds kept by the plugin until no more than max are left.
+     */
+    public void release(final BuildHistory history, final int max) throws IOException {
+        if (max <= 0) return;
+        for (int number : overflow(max)) {
+            final BuildRecord build = history.getBuild(number);
+            if ((build != null) && build.isKeepLog()) history.keepLog(build, false);
+        }
+    }
+
+    /**
+     * Record a change to the keep flag made by the plugin.
+     */
+    static void kept(final Run<?, ?> run, final boolean wasKept) {
+        final boolean kept = run.isKeepLog();
+        if (kept == wasKept) return;
+        final BuildRecordFile records = BuildRecordFile.peek(run.getParent());
+        if (records != null) records.setKeptByPlugin(run.getNumber(), kept);
+        final PluginKeptBuilds index = peek(run.getParent());
+        if (index != null) index.update(run.getNumber(), kept);
+        KeptBuildCatalog.get().update(run, kept);
+    }
+
+    @Extension
+    public static class KeepLogListener extends SaveableListener {
+
+        @Override
+        public void onChange(final Saveable o, final XmlFile file) {
+            if (!(o instanceof Run) || ((Run<?, ?>) o).isKeepLog()) return;
+            final Run<?, ?> run = (Run<?, ?>) o;
+            final PluginKeptBuilds index = peek(run.getParent());
+            if (index != null) index.update(run.getNumber(), false);
+            KeptBuildCatalog.get().remove(run.getParent().getFullName(), run.getNumber());
+        }
+
+    }
+
+    @Extension
+    public static class DeletedRunListener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onDeleted(final Run<?, ?> run) {
+            final PluginKeptBuilds index = peek(run.getParent());
+            if (index != null) index.update(run.getNumber(), false);
+            KeptBuildCatalog.get().remove(run.getParent().getFullName(), run.getNumber());
+        }
+
+    }
+
+}
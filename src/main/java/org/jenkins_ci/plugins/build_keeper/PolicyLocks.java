@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import jenkins.util.SystemProperties;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks that make policy decisions for a job one at a time, so that two builds finishing together cannot both
+ * find no kept build and both be kept, while jobs on different stripes are evaluated in parallel.
+ */
+public final class PolicyLocks {
+
+    private static final int STRIPES = SystemProperties.getInteger(PolicyLocks.class.getName() + ".stripes", 64);
+    private static final PolicyLocks INSTANCE = new PolicyLocks(STRIPES);
+
+    private final ReentrantLock[] locks;
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+
+    PolicyLocks(final int stripes) {
+        int size = 1;
+        while (size < stripes) size <<= 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++)
+            locks[i] = new ReentrantLock();
+    }
+
+    public static PolicyLocks get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param key what identifies the job, see {@link BuildHistory#getKey()}
+     * @return the held lock, to be unlocked when the decision has been made
+     */
+    public ReentrantLock lock(final Object key) {
+        final ReentrantLock lock = stripe(key);
+        acquired.incrementAndGet();
+        if (!lock.tryLock()) {
+            contended.incrementAndGet();
+            lock.lock();
+        }
+        return lock;
+    }
+
+    ReentrantLock stripe(final Object key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return locks[hash & (locks.length - 1)];
+    }
+
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    public long getAcquiredCount() {
+        return acquired.get();
+    }
+
+    /**
+     * @return how many times a lock was already held, by another job on the same stripe or the same job
+     */
+    public long getContendedCount() {
+        return contended.get();
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Run;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * What the policies cost: how long they take, what they decide and how many builds they have to load, by policy
+ * type and by job, and how long it takes to save the builds they keep.
+ */
+@ExportedBean
+public class PolicyMetrics {
+
+    /** Upper bounds of the buckets for the number of builds loaded by an evaluation, the last bucket is unbounded. */
+    static final int[] ACCESS_BUCKETS = {0, 1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024};
+    private static final int HOT_JOBS = 20;
+
+    private static final PolicyMetrics INSTANCE = new PolicyMetrics();
+
+    private final ConcurrentMap<String, PolicyStats> policies = new ConcurrentHashMap<String, PolicyStats>();
+    private final ConcurrentMap<String, JobStats> jobs = new ConcurrentHashMap<String, JobStats>();
+    private final Latency saves = new Latency();
+    private final AtomicLong saveErrors = new AtomicLong();
+
+    public static PolicyMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Apply the policy to a build that has just finished, recording what it cost.
+     */
+    public void apply(final BuildKeeperPolicy policy, final BuildHistory history, final Run<?, ?> build,
+                      final BuildListener listener) throws IOException {
+        apply(policy, history, BuildRecord.of(build), build.getParent().getFullName(), listener);
+    }
+
+    /**
+     * Builds loaded to warm up the history's indexes, and builds kept other than the one that finished, are charged to
+     * this evaluation.
+     */
+    void apply(final BuildKeeperPolicy policy, final BuildHistory history, final BuildRecord build, final String job,
+               final BuildListener listener) throws IOException {
+        final long accessesBefore = history.getAccessCount();
+        final long keepsBefore = history.getKeepCount();
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            policy.apply(history, build, listener);
+            failed = false;
+        } finally {
+            record(policy.getClass().getSimpleName(), job, System.nanoTime() - start,
+                   history.getAccessCount() - accessesBefore, history.getKeepCount() > keepsBefore, failed);
+        }
+    }
+
+    void record(final String policy, final String job, final long nanos, final long accesses, final boolean kept, final boolean failed) {
+        PolicyStats stats = policies.get(policy);
+        if (stats == null) {
+            policies.putIfAbsent(policy, new PolicyStats(policy));
+            stats = policies.get(policy);
+        }
+        stats.record(nanos, accesses, kept, failed);
+        JobStats jobStats = jobs.get(job);
+        if (jobStats == null) {
+            jobs.putIfAbsent(job, new JobStats(job));
+            jobStats = jobs.get(job);
+        }
+        jobStats.record(nanos, accesses);
+    }
+
+    void saved(final long nanos) {
+        saves.record(nanos);
+    }
+
+    void saveFailed() {
+        saveErrors.incrementAndGet();
+    }
+
+    static int bucket(final long accesses) {
+        for (int i = 0; i < ACCESS_BUCKETS.length; i++) {
+            if (accesses <= ACCESS_BUCKETS[i]) return i;
+        }
+        return ACCESS_BUCKETS.length;
+    }
+
+    @Exported
+    public List<PolicyStats> getPolicies() {
+        final List<PolicyStats> sorted = new ArrayList<PolicyStats>(policies.values());
+        Collections.sort(sorted, new Comparator<PolicyStats>() {
+            public int compare(final PolicyStats a, final PolicyStats b) {
+                return a.getPolicy().compareTo(b.getPolicy());
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * @return the jobs whose evaluations have loaded the most builds
+     */
+    @Exported
+    public List<JobStats> getHotJobs() {
+        final List<JobStats> sorted = new ArrayList<JobStats>(jobs.values());
+        Collections.sort(sorted, new Comparator<JobStats>() {
+            public int compare(final JobStats a, final JobStats b) {
+                final long difference = b.getAccesses() - a.getAccesses();
+                return difference == 0 ? a.getJob().compareTo(b.getJob()) : difference > 0 ? 1 : -1;
+            }
+        });
+        return sorted.size() > HOT_JOBS ? sorted.subList(0, HOT_JOBS) : sorted;
+    }
+
+    @Exported
+    public int[] getAccessBuckets() {
+        return ACCESS_BUCKETS.clone();
+    }
+
+    @Exported
+    public Latency getSaves() {
+        return saves;
+    }
+
+    @Exported
+    public long getSaveErrors() {
+        return saveErrors.get();
+    }
+
+    @Exported
+    public int getPendingSaves() {
+        return KeepLogWriter.getPendingCount();
+    }
+
+    @Exported
+    public int getQueueDepth() {
+        return EvaluationQueue.get().getQueueDepth();
+    }
+
+    @Exported
+    public long getQueueMaxLagMillis() {
+        return EvaluationQueue.get().getMaxLagMillis();
+    }
+
+    @Exported
+    public long getConditionTimeouts() {
+        return RunConditionEvaluator.get().getTimeoutCount();
+    }
+
+    @Exported
+    public long getConditionCacheHits() {
+        return RunConditionEvaluator.get().getCacheHitCount();
+    }
+
+    @Exported
+    public long getLockContention() {
+        return PolicyLocks.get().getContendedCount();
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static class Latency {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(final long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while ((nanos > max) && !maxNanos.compareAndSet(max, nanos))
+                max = maxNanos.get();
+        }
+
+        @Exported
+        public long getCount() {
+            return count.get();
+        }
+
+        @Exported
+        public double getMeanMillis() {
+            final long n = count.get();
+            return n == 0 ? 0 : totalNanos.get() / (n * 1000000.0);
+        }
+
+        @Exported
+        public double getMaxMillis() {
+            return maxNanos.get() / 1000000.0;
+        }
+
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static class PolicyStats {
+
+        private final String policy;
+        private final Latency apply = new Latency();
+        private final AtomicLong kept = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong accesses = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(ACCESS_BUCKETS.length + 1);
+
+        PolicyStats(final String policy) {
+            this.policy = policy;
+        }
+
+        void record(final long nanos, final long accessed, final boolean keep, final boolean failed) {
+            apply.record(nanos);
+            if (failed) {
+                errors.incrementAndGet();
+            } else if (keep) {
+                kept.incrementAndGet();
+            } else {
+                skipped.incrementAndGet();
+            }
+            accesses.addAndGet(accessed);
+            histogram.incrementAndGet(bucket(accessed));
+        }
+
+        @Exported
+        public String getPolicy() {
+            return policy;
+        }
+
+        @Exported
+        public Latency getApply() {
+            return apply;
+        }
+
+        @Exported
+        public long getKept() {
+            return kept.get();
+        }
+
+        @Exported
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        @Exported
+        public long getErrors() {
+            return errors.get();
+        }
+
+        @Exported
+        public long getAccesses() {
+            return accesses.get();
+        }
+
+        /**
+         * @return the number of evaluations in each of {@link #ACCESS_BUCKETS}, plus one for more than the last
+         */
+        @Exported
+        public long[] getAccessHistogram() {
+            final long[] counts = new long[histogram.length()];
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = histogram.get(i);
+            return counts;
+        }
+
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static class JobStats {
+
+        private final String job;
+        private final Latency apply = new Latency();
+        private final AtomicLong accesses = new AtomicLong();
+
+        JobStats(final String job) {
+            this.job = job;
+        }
+
+        void record(final long nanos, final long accessed) {
+            apply.record(nanos);
+            accesses.addAndGet(accessed);
+        }
+
+        @Exported
+        public String getJob() {
+            return job;
+        }
+
+        @Exported
+        public Latency getApply() {
+            return apply;
+        }
+
+        @Exported
+        public long getAccesses() {
+            return accesses.get();
+        }
+
+    }
+
+}
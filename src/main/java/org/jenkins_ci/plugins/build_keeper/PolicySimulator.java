@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Util;
+import hudson.model.BuildListener;
+import hudson.model.Job;
+import hudson.model.Run;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Replays a job's recorded history through a policy, oldest build first, as if the policy had always been configured,
+ * without keeping or releasing anything. Memory is bounded by a bit per build and the builds that would be kept.
+ */
+public class PolicySimulator {
+
+    private static final int SIZE_SAMPLES = SystemProperties.getInteger(PolicySimulator.class.getName() + ".sizeSamples", 10);
+
+    private final BuildKeeperPolicy policy;
+    private final int maxKept;
+    private final BuildListener listener = EvaluationQueue.listener();
+
+    public PolicySimulator(final BuildKeeperPolicy policy, final int maxKept) {
+        this.policy = policy;
+        this.maxKept = maxKept;
+    }
+
+    public Report simulate(final Job<?, ?> job) throws IOException {
+        final Run<?, ?> first = job.getFirstBuild();
+        final Run<?, ?> last = job.getLastBuild();
+        final RunBuildHistory history = new RunBuildHistory(job);
+        if ((first == null) || (last == null)) return simulate(history, 1, 0, System.currentTimeMillis(), 0);
+        return simulate(history, first.getNumber(), last.getNumber(), System.currentTimeMillis(), getAverageBuildSize(job));
+    }
+
+    /**
+     * @param now when builds kept until a time are checked to see whether they would still be kept
+     * @param averageBuildSize bytes on disk per build, or 0 if unknown
+     */
+    Report simulate(final BuildHistory history, final int first, final int last, final long now,
+                    final long averageBuildSize) throws IOException {
+        // a policy that keeps builds itself would keep them for real
+        if (!policy.isSimulable()) throw new IllegalArgumentException(Messages.policySimulator_notSimulable());
+        final long started = System.currentTimeMillis();
+        final SimulatedHistory simulated = new SimulatedHistory(history);
+        final Report report = new Report();
+        for (int number = first; number <= last; number++) {
+            final BuildRecord build = history.getBuild(number);
+            if (build == null) continue;
+            report.builds++;
+            if (build.isKeepLog()) report.currentlyKept++;
+            if (build.getResult() == null) {
+                report.running++;
+                continue;
+            }
+            policy.apply(simulated, simulated.reached(build), listener);
+            if (maxKept > 0) simulated.getPluginKeptBuilds().release(simulated, maxKept);
+        }
+        final int[] kept = simulated.getKeptNumbers();
+        int stillKept = 0;
+        for (int number : kept) {
+            final long expiry = simulated.getExpiry(number);
+            if ((expiry == 0) || (expiry > now)) {
+                kept[stillKept++] = number;
+            } else {
+                report.expired++;
+            }
+        }
+        report.keptNumbers = Arrays.copyOf(kept, stillKept);
+        report.keptByUser = simulated.getKeptByUserCount();
+        report.averageBuildSize = averageBuildSize;
+        report.elapsedMillis = System.currentTimeMillis() - started;
+        return report;
+    }
+
+    /**
+     * @return the mean size of the most recent completed builds, as the size of older builds is not worth the walk
+     */
+    static long getAverageBuildSize(final Job<?, ?> job) {
+        long total = 0;
+        int samples = 0;
+        for (Run<?, ?> run = job.getLastCompletedBuild(); (run != null) && (samples < SIZE_SAMPLES); run = run.getPreviousBuild()) {
+            total += size(run.getRootDir());
+            samples++;
+        }
+        return samples == 0 ? 0 : total / samples;
+    }
+
+    private static long size(final File file) {
+        if (file == null) return 0;
+        final File[] children = file.listFiles();
+        if (children == null) return file.length();
+        long size = 0;
+        for (File child : children)
+            size += size(child);
+        return size;
+    }
+
+    public static class Report {
+
+        private int builds;
+        private int running;
+        private int currentlyKept;
+        private int keptByUser;
+        private int expired;
+        private int[] keptNumbers = new int[0];
+        private long averageBuildSize;
+        private long elapsedMillis;
+
+        public int getBuildCount() {
+            return builds;
+        }
+
+        public int getRunningCount() {
+            return running;
+        }
+
+        public int getCurrentlyKeptCount() {
+            return currentlyKept;
+        }
+
+        /**
+         * @return builds kept by a user, which are kept whatever the policy
+         */
+        public int getKeptByUserCount() {
+            return keptByUser;
+        }
+
+        /**
+         * @return builds the policy would keep, not counting builds kept by a user
+         */
+        public int getKeptCount() {
+            return keptNumbers.length;
+        }
+
+        /**
+         * @return builds the policy would have kept, but would have stopped keeping by now
+         */
+        public int getExpiredCount() {
+            return expired;
+        }
+
+        public int[] getKeptNumbers() {
+            return keptNumbers.clone();
+        }
+
+        /**
+         * @return the kept numbers with runs of consecutive builds collapsed, such as 1-3, 7, 10
+         */
+        public String getKeptRanges() {
+            final StringBuilder ranges = new StringBuilder();
+            for (int i = 0; i < keptNumbers.length; i++) {
+                int j = i;
+                while ((j + 1 < keptNumbers.length) && (keptNumbers[j + 1] == keptNumbers[j] + 1)) j++;
+                if (ranges.length() > 0) ranges.append(", ");
+                ranges.append(keptNumbers[i]);
+                if (j > i) ranges.append('-').append(keptNumbers[j]);
+                i = j;
+            }
+            return ranges.toString();
+        }
+
+        public long getAverageBuildSize() {
+            return averageBuildSize;
+        }
+
+        /**
+         * @return bytes on disk for the builds that would be kept, including those kept by a user
+         */
+        public long getEstimatedKeptSize() {
+            return averageBuildSize * (keptNumbers.length + keptByUser);
+        }
+
+        public String getEstimatedKeptSizeString() {
+            return formatSize(getEstimatedKeptSize());
+        }
+
+        public String getAverageBuildSizeString() {
+            return formatSize(averageBuildSize);
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public String getElapsed() {
+            return Util.getTimeSpanString(elapsedMillis);
+        }
+
+        private static String formatSize(final long bytes) {
+            if (bytes < 1024) return bytes + " B";
+            final String[] units = {"KB", "MB", "GB", "TB"};
+            double size = bytes / 1024.0;
+            int unit = 0;
+            while ((size >= 1024) && (unit < units.length - 1)) {
+                size /= 1024;
+                unit++;
+            }
+            return String.format("%.1f %s", size, units[unit]);
+        }
+
+    }
+
+}
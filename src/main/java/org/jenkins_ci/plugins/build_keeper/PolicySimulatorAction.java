@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamedThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.model.TransientActionFactory;
+import jenkins.util.SystemProperties;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerProxy;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Preview, linked from the job configuration, of what a policy would keep had it always been configured on the job.
+ * The replay can take a while on a long history, so it runs in the background and the page refreshes until it is done.
+ * Simulations run on a small pool of their own, so a burst of them cannot hold up the other users of the timer.
+ */
+public class PolicySimulatorAction implements Action, StaplerProxy {
+
+    private static final Logger LOGGER = Logger.getLogger(PolicySimulatorAction.class.getName());
+    private static final Map<Job<?, ?>, Simulation> SIMULATIONS = Collections.synchronizedMap(new WeakHashMap<Job<?, ?>, Simulation>());
+    private static final int WORKERS = SystemProperties.getInteger(PolicySimulatorAction.class.getName() + ".workers", 1);
+    private static final int CAPACITY = SystemProperties.getInteger(PolicySimulatorAction.class.getName() + ".capacity", 10);
+
+    private static ThreadPoolExecutor executor;
+
+    private final Job<?, ?> job;
+    private final BuildKeeper keeper;
+
+    PolicySimulatorAction(final Job<?, ?> job, final BuildKeeper keeper) {
+        this.job = job;
+        this.keeper = keeper;
+    }
+
+    /**
+     * The preview shows the history of the job, so every view needs the permission to configure it.
+     */
+    public Object getTarget() {
+        job.checkPermission(Item.CONFIGURE);
+        return this;
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return Messages.policySimulator_displayName();
+    }
+
+    public String getUrlName() {
+        return "build-keeper-preview";
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    /**
+     * @return the saved configuration, which the form starts from, or null if the job has none
+     */
+    public BuildKeeper getKeeper() {
+        return keeper;
+    }
+
+    public BuildKeeper.BuildKeeperDescriptor getDescriptor() {
+        return Jenkins.get().getDescriptorByType(BuildKeeper.BuildKeeperDescriptor.class);
+    }
+
+    /**
+     * @return the latest simulation of the job, which may still be running, or null if there has been none
+     */
+    public Simulation getSimulation() {
+        return SIMULATIONS.get(job);
+    }
+
+    @RequirePOST
+    public HttpResponse doSimulate(final StaplerRequest req) throws IOException, ServletException {
+        job.checkPermission(Item.CONFIGURE);
+        final JSONObject form = req.getSubmittedForm();
+        final BuildKeeperPolicy policy = req.bindJSON(BuildKeeperPolicy.class, form.getJSONObject("policy"));
+        final int maxKept = Math.max(0, form.optInt("maxKept"));
+        if (!policy.isSimulable())
+            return HttpResponses.forwardToView(this, "index").with("error", Messages.policySimulator_notSimulable());
+        synchronized (SIMULATIONS) {
+            final Simulation running = SIMULATIONS.get(job);
+            if ((running == null) || !running.isRunning()) {
+                final Simulation simulation = new Simulation(job, new PolicySimulator(policy, maxKept));
+                try {
+                    getExecutor().execute(simulation);
+                } catch (RejectedExecutionException ree) {
+                    return HttpResponses.forwardToView(this, "index").with("error", Messages.policySimulator_busy());
+                }
+                SIMULATIONS.put(job, simulation);
+            }
+        }
+        return HttpResponses.redirectToDot();
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(WORKERS, WORKERS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(CAPACITY),
+                                              new NamedThreadFactory(new DaemonThreadFactory(), "Build keeper simulation"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    public static class Simulation implements Runnable {
+
+        private final Job<?, ?> job;
+        private final PolicySimulator simulator;
+        private volatile boolean running = true;
+        private volatile PolicySimulator.Report report;
+        private volatile String error;
+
+        Simulation(final Job<?, ?> job, final PolicySimulator simulator) {
+            this.job = job;
+            this.simulator = simulator;
+        }
+
+        /**
+         * Runs as the system, as the user who asked for it was checked for permission to configure the job.
+         */
+        public void run() {
+            final ACLContext context = ACL.as2(ACL.SYSTEM2);
+            try {
+                report = simulator.simulate(job);
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Failed to simulate " + job.getFullName(), ioe);
+                error = ioe.getLocalizedMessage();
+            } catch (RuntimeException re) {
+                LOGGER.log(Level.WARNING, "Failed to simulate " + job.getFullName(), re);
+                error = re.getLocalizedMessage();
+            } finally {
+                running = false;
+                context.close();
+            }
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        /**
+         * @return the report, or null while running or if the simulation failed
+         */
+        public PolicySimulator.Report getReport() {
+            return report;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+    }
+
+    @Extension
+    public static class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @Override
+        public Collection<? extends Action> createFor(final Job target) {
+            final BuildKeeper keeper = BuildKeeper.of(target);
+            return Collections.singletonList(new PolicySimulatorAction(target, keeper));
+        }
+
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Util;
+import hudson.model.BuildListener;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies the policy configured on each job to all of the builds it already has, oldest first, one fork join task
+ * per job. Builds are read one at a time through {@link RunBuildHistory}, so a job's builds are never all loaded.
+ */
+public class PolicySweep {
+
+    private static final Logger LOGGER = Logger.getLogger(PolicySweep.class.getName());
+    private static final int PARALLELISM = SystemProperties.getInteger(PolicySweep.class.getName() + ".parallelism",
+                                                                       Runtime.getRuntime().availableProcessors());
+
+    private final boolean dryRun;
+    private final BuildListener listener = EvaluationQueue.listener();
+    private final AtomicInteger jobs = new AtomicInteger();
+    private final AtomicInteger jobsSwept = new AtomicInteger();
+    private final AtomicInteger jobsFailed = new AtomicInteger();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong kept = new AtomicLong();
+    private final Queue<JobResult> results = new ConcurrentLinkedQueue<JobResult>();
+    private final long started = System.currentTimeMillis();
+    private volatile long finished;
+    private volatile boolean aborted;
+
+    PolicySweep(final boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Start sweeping every job that has a build keeper, of its own or from a default, returning straight away.
+     */
+    public static PolicySweep start(final boolean dryRun) {
+        final PolicySweep sweep = new PolicySweep(dryRun);
+        final List<JobSweep> tasks = new ArrayList<JobSweep>();
+        for (Job<?, ?> job : Jenkins.get().getAllItems(Job.class)) {
+            final BuildKeeper keeper = BuildKeeper.of(job);
+            if ((keeper != null) && (keeper.getPolicy() != null))
+                tasks.add(sweep.new JobSweep(job, keeper));
+        }
+        sweep.jobs.set(tasks.size());
+        final ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        pool.execute(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                try {
+                    invokeAll(tasks);
+                } finally {
+                    sweep.finished = System.currentTimeMillis();
+                    pool.shutdown();
+                }
+            }
+        });
+        return sweep;
+    }
+
+    /**
+     * Replay the policy over the builds from first to last, stopping at the first build that has not completed.
+     */
+    void sweep(final BuildKeeperPolicy policy, final SweepHistory history, final int first, final int last) throws IOException {
+        for (int number = first; (number <= last) && !aborted; number++) {
+            final BuildRecord build = history.getBuild(number);
+            if (build == null) continue;
+            if (build.getResult() == null) break;
+            final ReentrantLock lock = PolicyLocks.get().lock(history.getJobKey());
+            try {
+                policy.apply(history, build, listener);
+            } finally {
+                lock.unlock();
+            }
+            builds.incrementAndGet();
+        }
+    }
+
+    private class JobSweep extends RecursiveAction {
+
+        private final Job<?, ?> job;
+        private final BuildKeeper keeper;
+
+        JobSweep(final Job<?, ?> job, final BuildKeeper keeper) {
+            this.job = job;
+            this.keeper = keeper;
+        }
+
+        /**
+         * Fork join workers carry no authentication, and keeping a build checks permissions.
+         */
+        @Override
+        protected void compute() {
+            if (aborted) return;
+            final ACLContext context = ACL.as2(ACL.SYSTEM2);
+            try {
+                final BuildKeeperPolicy policy = keeper.getPolicy();
+                // policies that keep builds directly, or have side effects, cannot be kept from changing things
+                if (dryRun && !policy.isSimulable()) return;
+                final Run<?, ?> first = job.getFirstBuild();
+                final Run<?, ?> last = job.getLastBuild();
+                if ((first == null) || (last == null)) return;
+                final SweepHistory history = new SweepHistory(new RunBuildHistory(job), dryRun);
+                sweep(policy, history, first.getNumber(), last.getNumber());
+                if (!dryRun && (keeper.getMaxKept() > 0)) {
+                    final ReentrantLock lock = PolicyLocks.get().lock(history.getJobKey());
+                    try {
+                        history.getPluginKeptBuilds().release(history, keeper.getMaxKept());
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                if (!history.getKept().isEmpty()) {
+                    kept.addAndGet(history.getKept().size());
+                    results.add(new JobResult(job.getFullName(), history.getKept()));
+                }
+            } catch (IOException ioe) {
+                jobsFailed.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Failed to sweep " + job.getFullName(), ioe);
+            } catch (RuntimeException re) {
+                jobsFailed.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Failed to sweep " + job.getFullName(), re);
+            } finally {
+                context.close();
+                jobsSwept.incrementAndGet();
+            }
+        }
+
+    }
+
+    public void abort() {
+        aborted = true;
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public boolean isRunning() {
+        return finished == 0;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public int getJobCount() {
+        return jobs.get();
+    }
+
+    public int getJobsSwept() {
+        return jobsSwept.get();
+    }
+
+    public int getJobsFailed() {
+        return jobsFailed.get();
+    }
+
+    public long getBuildCount() {
+        return builds.get();
+    }
+
+    public long getKeptCount() {
+        return kept.get();
+    }
+
+    public long getElapsedMillis() {
+        return (finished == 0 ? System.currentTimeMillis() : finished) - started;
+    }
+
+    public String getElapsed() {
+        return Util.getTimeSpanString(getElapsedMillis());
+    }
+
+    /**
+     * @return builds evaluated per second
+     */
+    public long getThroughput() {
+        return builds.get() * 1000 / Math.max(1, getElapsedMillis());
+    }
+
+    public Collection<JobResult> getResults() {
+        return results;
+    }
+
+    public static class JobResult {
+
+        private final String job;
+        private final List<Integer> kept;
+
+        JobResult(final String job, final List<Integer> kept) {
+            this.job = job;
+            this.kept = kept;
+        }
+
+        public String getJob() {
+            return job;
+        }
+
+        public List<Integer> getKept() {
+            return kept;
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps each build whose result differs from the build before it, for the transitions chosen between success,
+ * unstable and failure. The result of the latest build of each job is held by a {@link ResultTransitions}, so the
+ * build before is not loaded to compare with.
+ */
+public class ResultTransitionPolicy extends BuildKeeperPolicy implements ResultTransitions.Allowed {
+
+    private boolean successToUnstable = true;
+    private boolean successToFailure = true;
+    private boolean unstableToSuccess = true;
+    private boolean unstableToFailure = true;
+    private boolean failureToSuccess = true;
+    private boolean failureToUnstable = true;
+    private transient Map<Object, ResultTransitions> transitions;
+
+    @DataBoundConstructor
+    public ResultTransitionPolicy() {
+    }
+
+    public boolean isSuccessToUnstable() {
+        return successToUnstable;
+    }
+
+    @DataBoundSetter
+    public void setSuccessToUnstable(final boolean successToUnstable) {
+        this.successToUnstable = successToUnstable;
+    }
+
+    public boolean isSuccessToFailure() {
+        return successToFailure;
+    }
+
+    @DataBoundSetter
+    public void setSuccessToFailure(final boolean successToFailure) {
+        this.successToFailure = successToFailure;
+    }
+
+    public boolean isUnstableToSuccess() {
+        return unstableToSuccess;
+    }
+
+    @DataBoundSetter
+    public void setUnstableToSuccess(final boolean unstableToSuccess) {
+        this.unstableToSuccess = unstableToSuccess;
+    }
+
+    public boolean isUnstableToFailure() {
+        return unstableToFailure;
+    }
+
+    @DataBoundSetter
+    public void setUnstableToFailure(final boolean unstableToFailure) {
+        this.unstableToFailure = unstableToFailure;
+    }
+
+    public boolean isFailureToSuccess() {
+        return failureToSuccess;
+    }
+
+    @DataBoundSetter
+    public void setFailureToSuccess(final boolean failureToSuccess) {
+        this.failureToSuccess = failureToSuccess;
+    }
+
+    public boolean isFailureToUnstable() {
+        return failureToUnstable;
+    }
+
+    @DataBoundSetter
+    public void setFailureToUnstable(final boolean failureToUnstable) {
+        this.failureToUnstable = failureToUnstable;
+    }
+
+    public boolean isAllowed(final Result from, final Result to) {
+        if (from == Result.SUCCESS) return to == Result.UNSTABLE ? successToUnstable : successToFailure;
+        if (from == Result.UNSTABLE) return to == Result.SUCCESS ? unstableToSuccess : unstableToFailure;
+        return to == Result.SUCCESS ? failureToSuccess : failureToUnstable;
+    }
+
+    @Override
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
+        for (int number : getTransitions(history).completed(history, build, this)) {
+            final BuildRecord changed = number == build.getNumber() ? build : history.getBuild(number);
+            if (changed != null)
+                history.keepLog(changed, true);
+        }
+    }
+
+    @Override
+    void takeOver(final BuildKeeperPolicy previous) {
+        if (!(previous instanceof ResultTransitionPolicy)) return;
+        synchronized (previous) {
+            transitions = ((ResultTransitionPolicy) previous).transitions;
+        }
+    }
+
+    private ResultTransitions getTransitions(final BuildHistory history) {
+        synchronized (this) {
+            if (transitions == null)
+                transitions = Collections.synchronizedMap(new WeakHashMap<Object, ResultTransitions>());
+        }
+        synchronized (transitions) {
+            ResultTransitions job = transitions.get(history.getStateKey());
+            if (job == null) {
+                job = new ResultTransitions();
+                transitions.put(history.getStateKey(), job);
+            }
+            return job;
+        }
+    }
+
+    @Override
+    public int getEvaluationCost() {
+        return 10;
+    }
+
+    @Extension
+    public static class ResultTransitionPolicyDescriptor extends BuildKeeperPolicyDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.resultTransitionPolicy_displayName();
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The result of the latest build of a job, folded forward one build at a time in build number order so that each
+ * build is compared with the build before it without loading it. Builds that complete before an earlier build are
+ * held until the earlier build completes. Aborted and not built builds say nothing about the job, so they are passed
+ * over.
+ */
+class ResultTransitions {
+
+    private boolean seeded;
+    private int last;
+    private Result result;
+    private final TreeMap<Integer, Result> pending = new TreeMap<Integer, Result>();
+
+    /**
+     * @return the builds whose result differs from the one before, in the transitions allowed, that this completion
+     * has made known
+     */
+    synchronized List<Integer> completed(final BuildHistory history, final BuildRecord build, final Allowed allowed) {
+        if (!seeded) seed(history, build);
+        final List<Integer> changed = new ArrayList<Integer>();
+        if (build.getNumber() <= last) return changed;
+        pending.put(build.getNumber(), build.getResult());
+        while (!pending.isEmpty()) {
+            final int next = last + 1;
+            final boolean completed = pending.containsKey(next);
+            Result nextResult = pending.remove(next);
+            if (!completed) {
+                final BuildRecord missing = history.getBuild(next);
+                if (missing == null) {
+                    last = next;
+                    continue;
+                }
+                nextResult = missing.getResult();
+                if (nextResult == null) break;
+            }
+            if (isCounted(nextResult)) {
+                if ((result != null) && (result != nextResult) && allowed.isAllowed(result, nextResult)) changed.add(next);
+                result = nextResult;
+            }
+            last = next;
+        }
+        return changed;
+    }
+
+    synchronized Result getResult() {
+        return result;
+    }
+
+    static boolean isCounted(final Result result) {
+        return (result == Result.SUCCESS) || (result == Result.UNSTABLE) || (result == Result.FAILURE);
+    }
+
+    private void seed(final BuildHistory history, final BuildRecord build) {
+        seeded = true;
+        last = build.getNumber() - 1;
+        BuildRecord previous = history.getPreviousBuild(build);
+        while ((previous != null) && (previous.getResult() == null)) {
+            last = previous.getNumber() - 1;
+            previous = history.getPreviousBuild(previous);
+        }
+        if (previous == null) return;
+        last = previous.getNumber();
+        while ((previous != null) && !isCounted(previous.getResult()))
+            previous = history.getPreviousBuild(previous);
+        if (previous != null) result = previous.getResult();
+    }
+
+    interface Allowed {
+
+        boolean isAllowed(Result from, Result to);
+
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+import java.io.IOException;
+
+/**
+ * The history of a job, read from its {@link BuildRecordFile} where possible and from the {@link Run}s where the
+ * file does not know a build. Runs loaded this way are written back to the file.
+ */
+public class RunBuildHistory extends BuildHistory {
+
+    private final Job<?, ?> job;
+    private final BuildRecordFile records;
+    private Run<?, ?> run;
+
+    public RunBuildHistory(final Run<?, ?> build) {
+        this(build.getParent());
+        run = build;
+    }
+
+    public RunBuildHistory(final Job<?, ?> job) {
+        this.job = job;
+        records = BuildRecordFile.of(job);
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    @Override
+    public Object getKey() {
+        return job;
+    }
+
+    @Override
+    public BuildRecord getLastBuild() {
+        final Run<?, ?> last = job.getLastBuild();
+        if (last == null) return null;
+        run = last;
+        return BuildRecord.of(last);
+    }
+
+    @Override
+    public BuildRecord getBuild(final int number) {
+        if ((run != null) && (run.getNumber() == number)) return BuildRecord.of(run);
+        if (records != null) {
+            final int state = records.state(number);
+            if (state == BuildRecordFile.ABSENT) return null;
+            if (state == BuildRecordFile.PRESENT) {
+                final BuildRecord record = records.read(number);
+                if (record != null) return record;
+            }
+        }
+        accessed();
+        final Run<?, ?> loaded = job.getBuildByNumber(number);
+        if (loaded == null) return null;
+        run = loaded;
+        record(loaded);
+        return BuildRecord.of(loaded);
+    }
+
+    @Override
+    public BuildRecord getPreviousBuild(final BuildRecord build) {
+        if (records != null) {
+            int number = build.getNumber() - 1;
+            int state;
+            while ((number > 0) && ((state = records.state(number)) != BuildRecordFile.UNKNOWN)) {
+                if (state == BuildRecordFile.PRESENT) {
+                    final BuildRecord record = records.read(number);
+                    if (record != null) return record;
+                }
+                number--;
+            }
+            if (number <= 0) return null;
+        }
+        accessed();
+        final Run<?, ?> from = getRun(build);
+        final Run<?, ?> previous = from == null ? null : from.getPreviousBuild();
+        if (previous == null) return null;
+        run = previous;
+        record(previous);
+        return BuildRecord.of(previous);
+    }
+
+    @Override
+    public KeptBuildIndex getKeptBuilds() {
+        return KeptBuildIndex.of(job, this);
+    }
+
+    @Override
+    public PluginKeptBuilds getPluginKeptBuilds() {
+        return PluginKeptBuilds.of(job);
+    }
+
+    @Override
+    public void keepLog(final BuildRecord build, final boolean keep) throws IOException {
+        final Run<?, ?> kept = getRun(build);
+        if (kept == null) return;
+        if (keep && !kept.isKeepLog()) keptBuild();
+        KeepLogWriter.keepLog(kept, keep);
+    }
+
+    @Override
+    public void expireAt(final BuildRecord build, final long time) {
+        ExpirySchedule.get().schedule(job.getFullName(), build.getNumber(), time);
+    }
+
+    @Override
+    public Run<?, ?> getRun(final BuildRecord build) {
+        if ((run != null) && (run.getNumber() == build.getNumber())) return run;
+        final Run<?, ?> loaded = job.getBuildByNumber(build.getNumber());
+        if (loaded != null) run = loaded;
+        return loaded;
+    }
+
+    private void record(final Run<?, ?> loaded) {
+        if ((records != null) && !loaded.isBuilding()) records.record(loaded);
+    }
+
+}
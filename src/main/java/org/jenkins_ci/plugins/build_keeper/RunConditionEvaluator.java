@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamedThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.jenkins_ci.plugins.run_condition.RunCondition;
+import org.springframework.security.core.Authentication;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluates run conditions for {@link RunConditionPolicy} on a small bounded pool, so that a condition that hangs
+ * costs the build a timeout rather than its teardown, and remembers the outcome for each build so a condition is
+ * only run once per build.
+ */
+public class RunConditionEvaluator {
+
+    private static final int WORKERS = SystemProperties.getInteger(RunConditionEvaluator.class.getName() + ".workers", 4);
+    private static final int CAPACITY = SystemProperties.getInteger(RunConditionEvaluator.class.getName() + ".capacity", 100);
+
+    private static RunConditionEvaluator instance;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<Run<?, ?>, Map<String, Boolean>> outcomes =
+            Collections.synchronizedMap(new WeakHashMap<Run<?, ?>, Map<String, Boolean>>());
+    private final AtomicLong evaluated = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    RunConditionEvaluator(final int workers, final int capacity) {
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(capacity),
+                                          new NamedThreadFactory(new DaemonThreadFactory(), "Build keeper run condition"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized RunConditionEvaluator get() {
+        if (instance == null) instance = new RunConditionEvaluator(WORKERS, CAPACITY);
+        return instance;
+    }
+
+    /**
+     * @param timeout seconds to wait for the condition, or 0 to run it on the calling thread with no limit
+     * @throws TimeoutException if the condition did not complete in time, it has been interrupted
+     * @throws RejectedExecutionException if the pool is full of conditions that have not completed
+     */
+    public boolean evaluate(final RunCondition condition, final AbstractBuild<?, ?> build, final BuildListener listener,
+                            final int timeout, final boolean cache) throws Exception {
+        final String key = cache ? key(condition) : null;
+        if (key != null) {
+            final Map<String, Boolean> cached = outcomes.get(build);
+            final Boolean outcome = cached == null ? null : cached.get(key);
+            if (outcome != null) {
+                cacheHits.incrementAndGet();
+                return outcome;
+            }
+        }
+        final boolean outcome = timeout > 0 ? submit(condition, build, listener, timeout)
+                                            : condition.runPerform(build, listener);
+        evaluated.incrementAndGet();
+        if (key != null) {
+            synchronized (outcomes) {
+                Map<String, Boolean> cached = outcomes.get(build);
+                if (cached == null) {
+                    cached = new HashMap<String, Boolean>();
+                    outcomes.put(build, cached);
+                }
+                cached.put(key, outcome);
+            }
+        }
+        return outcome;
+    }
+
+    private boolean submit(final RunCondition condition, final AbstractBuild<?, ?> build, final BuildListener listener,
+                           final int timeout) throws Exception {
+        // the pool thread has no authentication of its own, so run the condition as whoever is completing the build
+        final Authentication authentication = Jenkins.getAuthentication2();
+        final Future<Boolean> future;
+        try {
+            future = executor.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    final ACLContext context = ACL.as2(authentication);
+                    try {
+                        return condition.runPerform(build, listener);
+                    } finally {
+                        context.close();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            rejected.incrementAndGet();
+            throw ree;
+        }
+        try {
+            return future.get(timeout, TimeUnit.SECONDS);
+        } catch (TimeoutException te) {
+            timedOut.incrementAndGet();
+            future.cancel(true);
+            throw te;
+        } catch (InterruptedException ie) {
+            future.cancel(true);
+            throw ie;
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof Exception) throw (Exception) ee.getCause();
+            throw ee;
+        }
+    }
+
+    /**
+     * Conditions do not implement equals, so two conditions are the same if they are configured the same.
+     */
+    static String key(final RunCondition condition) {
+        return Jenkins.XSTREAM2.toXML(condition);
+    }
+
+    public long getEvaluatedCount() {
+        return evaluated.get();
+    }
+
+    public long getTimeoutCount() {
+        return timedOut.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+}
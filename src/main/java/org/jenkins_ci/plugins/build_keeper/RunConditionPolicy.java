@@ -28,11 +28,14 @@ import hudson.Extension;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.Descriptor;
+import hudson.model.Run;
 import org.jenkins_ci.plugins.run_condition.RunCondition;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,7 +44,9 @@ public class RunConditionPolicy extends BuildKeeperPolicy {
     private static Logger LOGGER = Logger.getLogger("org.jenkins_ci.plugins.build_keeper.RunConditionPolicy");
     private final RunCondition runCondition;
     private final boolean keepBuildIfEvalFails;
-    
+    private int timeout;
+    private boolean cacheOutcome;
+
     @DataBoundConstructor
     public RunConditionPolicy(final RunCondition runCondition, final boolean keepBuildIfEvalFails) {
         this.runCondition = runCondition;
@@ -56,20 +61,69 @@ public class RunConditionPolicy extends BuildKeeperPolicy {
         return keepBuildIfEvalFails;
     }
 
+    public int getTimeout() {
+        return timeout;
+    }
+
+    @DataBoundSetter
+    public void setTimeout(final int timeout) {
+        this.timeout = Math.max(0, timeout);
+    }
+
+    public boolean isCacheOutcome() {
+        return cacheOutcome;
+    }
+
+    @DataBoundSetter
+    public void setCacheOutcome(final boolean cacheOutcome) {
+        this.cacheOutcome = cacheOutcome;
+    }
+
     @Override
     public void apply(AbstractBuild build, BuildListener listener) throws IOException {
+        if (shouldKeep(build, listener))
+            KeepLogWriter.keepLog(build, true);
+    }
+
+    @Override
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
+        final Run run = history.getRun(build);
+        if ((run instanceof AbstractBuild) && shouldKeep((AbstractBuild) run, listener))
+            history.keepLog(build, true);
+    }
+
+    private boolean shouldKeep(final AbstractBuild build, final BuildListener listener) {
         try {
-            if (runCondition.runPerform(build, listener))
-                build.keepLog(true);
+            return RunConditionEvaluator.get().evaluate(runCondition, build, listener, timeout, cacheOutcome);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            listener.getLogger().println(Messages.runConditionPolicy_log_failedToEvaluate());
+            return false;
+        } catch (TimeoutException te) {
+            LOGGER.log(Level.WARNING, Messages.runConditionPolicy_log_timedOut(timeout));
+            listener.getLogger().println(Messages.runConditionPolicy_log_timedOut(timeout));
+            return keepBuildIfEvalFails;
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, Messages.runConditionPolicy_log_failedToEvaluate(), e);
             listener.getLogger().println(Messages.runConditionPolicy_log_failedToEvaluate());
             listener.getLogger().println(e.getLocalizedMessage());
-            if (keepBuildIfEvalFails)
-                build.keepLog(true);
+            return keepBuildIfEvalFails;
         }
     }
 
+    @Override
+    public int getEvaluationCost() {
+        return 1000;
+    }
+
+    /**
+     * A run condition can run arbitrary code against the build, so it is only evaluated when the build completes.
+     */
+    @Override
+    public boolean isSimulable() {
+        return false;
+    }
+
     @Extension
     public static class RunConditionPolicyDescriptor extends BuildKeeperPolicyDescriptor {
 
@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One pass over a history shared by several policies: each build is only looked up once however many policies ask
+ * for it, and while a policy is deciding, the builds it keeps or releases are collected instead of being changed.
+ */
+class SharedHistory extends BuildHistory {
+
+    private final BuildHistory builds;
+    private final Map<Integer, BuildRecord> loaded = new HashMap<Integer, BuildRecord>();
+    private final Map<Integer, Integer> previous = new HashMap<Integer, Integer>();
+    private final Map<Integer, Long> expiries = new HashMap<Integer, Long>();
+    private Map<Integer, BuildRecord> kept;
+    private Map<Integer, BuildRecord> released;
+    private Map<Integer, Long> expiring;
+
+    SharedHistory(final BuildHistory builds) {
+        this.builds = builds;
+    }
+
+    /**
+     * @return the builds the policy would keep and release
+     */
+    Decision decide(final BuildKeeperPolicy policy, final BuildRecord build, final BuildListener listener) throws IOException {
+        kept = new TreeMap<Integer, BuildRecord>();
+        released = new TreeMap<Integer, BuildRecord>();
+        expiring = new HashMap<Integer, Long>();
+        try {
+            policy.apply(this, build, listener);
+            for (Integer number : kept.keySet()) {
+                final Long time = expiring.containsKey(number) ? expiring.get(number) : Long.MAX_VALUE;
+                final Long before = expiries.get(number);
+                expiries.put(number, before == null ? time : Math.max(before, time));
+            }
+            return new Decision(kept, released);
+        } finally {
+            kept = null;
+            released = null;
+            expiring = null;
+        }
+    }
+
+    /**
+     * @return when a build kept by the policies decided so far expires, which is the latest any of them asked for,
+     * or Long.MAX_VALUE if one of them keeps it for good
+     */
+    long getExpiry(final int number) {
+        final Long time = expiries.get(number);
+        return time == null ? Long.MAX_VALUE : time;
+    }
+
+    @Override
+    public BuildRecord getLastBuild() {
+        return builds.getLastBuild();
+    }
+
+    @Override
+    public BuildRecord getBuild(final int number) {
+        if (loaded.containsKey(number)) return loaded.get(number);
+        final BuildRecord build = builds.getBuild(number);
+        loaded.put(number, build);
+        return build;
+    }
+
+    @Override
+    public BuildRecord getPreviousBuild(final BuildRecord build) {
+        final Integer number = previous.get(build.getNumber());
+        if (number != null) return number == 0 ? null : loaded.get(number);
+        final BuildRecord before = builds.getPreviousBuild(build);
+        previous.put(build.getNumber(), before == null ? 0 : before.getNumber());
+        if (before != null) loaded.put(before.getNumber(), before);
+        return before;
+    }
+
+    @Override
+    public KeptBuildIndex getKeptBuilds() {
+        return builds.getKeptBuilds();
+    }
+
+    @Override
+    public PluginKeptBuilds getPluginKeptBuilds() {
+        return builds.getPluginKeptBuilds();
+    }
+
+    @Override
+    public void keepLog(final BuildRecord build, final boolean keep) throws IOException {
+        if (kept == null) {
+            builds.keepLog(build, keep);
+        } else if (keep) {
+            kept.put(build.getNumber(), build);
+            released.remove(build.getNumber());
+        } else {
+            kept.remove(build.getNumber());
+            released.put(build.getNumber(), build);
+        }
+    }
+
+    @Override
+    public void expireAt(final BuildRecord build, final long time) {
+        if (expiring != null) {
+            expiring.put(build.getNumber(), time);
+        } else {
+            builds.expireAt(build, time);
+        }
+    }
+
+    @Override
+    public Run<?, ?> getRun(final BuildRecord build) {
+        return builds.getRun(build);
+    }
+
+    @Override
+    public String getParameter(final BuildRecord build, final String name) {
+        return builds.getParameter(build, name);
+    }
+
+    @Override
+    public long getDuration(final BuildRecord build) {
+        return builds.getDuration(build);
+    }
+
+    @Override
+    public Object getKey() {
+        return builds.getKey();
+    }
+
+    @Override
+    public Object getStateKey() {
+        return builds.getStateKey();
+    }
+
+    @Override
+    public long getAccessCount() {
+        return builds.getAccessCount();
+    }
+
+    @Override
+    public long getKeepCount() {
+        return builds.getKeepCount();
+    }
+
+    static class Decision {
+
+        private final Map<Integer, BuildRecord> kept;
+        private final Map<Integer, BuildRecord> released;
+
+        Decision(final Map<Integer, BuildRecord> kept, final Map<Integer, BuildRecord> released) {
+            this.kept = kept;
+            this.released = released;
+        }
+
+        /**
+         * @return the builds the policy would keep, by number
+         */
+        Map<Integer, BuildRecord> getKept() {
+            return kept;
+        }
+
+        /**
+         * @return the builds the policy would no longer keep, by number
+         */
+        Map<Integer, BuildRecord> getReleased() {
+            return released;
+        }
+
+    }
+
+}
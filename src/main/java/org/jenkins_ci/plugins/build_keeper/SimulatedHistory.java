@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Run;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A history as it would be had a policy been applied from the first build, without changing the builds behind it.
+ * Only builds kept by a user are taken from the real history, as the builds kept by the plugin are what is being
+ * simulated. Builds are read through the real history one at a time, and what is remembered is a bit per build plus
+ * the kept builds.
+ */
+class SimulatedHistory extends BuildHistory {
+
+    private final BuildHistory builds;
+    private final PluginKeptBuilds realPluginKept;
+    private final BitSet kept = new BitSet();
+    private final BitSet keptByUser = new BitSet();
+    private final KeptBuildIndex keptBuilds = new KeptBuildIndex();
+    private final PluginKeptBuilds pluginKeptBuilds = new PluginKeptBuilds();
+    private final Map<Integer, Long> expiries = new HashMap<Integer, Long>();
+
+    SimulatedHistory(final BuildHistory builds) {
+        this.builds = builds;
+        realPluginKept = builds.getPluginKeptBuilds();
+    }
+
+    /**
+     * Take the build as it is, before the policy sees it.
+     */
+    BuildRecord reached(final BuildRecord build) {
+        if (build.isKeepLog() && !realPluginKept.contains(build.getNumber())) {
+            keptByUser.set(build.getNumber());
+            keptBuilds.update(build.getNumber(), build.getTimestamp(), true);
+        }
+        return simulated(build);
+    }
+
+    int getKeptCount() {
+        return kept.cardinality();
+    }
+
+    int getKeptByUserCount() {
+        return keptByUser.cardinality();
+    }
+
+    /**
+     * @return the numbers of the builds the plugin would keep, oldest first
+     */
+    int[] getKeptNumbers() {
+        final int[] numbers = new int[kept.cardinality()];
+        int i = 0;
+        for (int number = kept.nextSetBit(0); number >= 0; number = kept.nextSetBit(number + 1))
+            numbers[i++] = number;
+        return numbers;
+    }
+
+    /**
+     * @return when the build would stop being kept, or 0 if it never would
+     */
+    long getExpiry(final int number) {
+        final Long time = expiries.get(number);
+        return time == null ? 0 : time;
+    }
+
+    @Override
+    public BuildRecord getLastBuild() {
+        return simulated(builds.getLastBuild());
+    }
+
+    @Override
+    public BuildRecord getBuild(final int number) {
+        return simulated(builds.getBuild(number));
+    }
+
+    @Override
+    public BuildRecord getPreviousBuild(final BuildRecord build) {
+        return simulated(builds.getPreviousBuild(build));
+    }
+
+    @Override
+    public KeptBuildIndex getKeptBuilds() {
+        return keptBuilds;
+    }
+
+    @Override
+    public PluginKeptBuilds getPluginKeptBuilds() {
+        return pluginKeptBuilds;
+    }
+
+    @Override
+    public void keepLog(final BuildRecord build, final boolean keep) {
+        final int number = build.getNumber();
+        if (keptByUser.get(number) || (kept.get(number) == keep)) return;
+        kept.set(number, keep);
+        pluginKeptBuilds.update(number, keep);
+        keptBuilds.update(number, build.getTimestamp(), keep);
+        if (!keep) expiries.remove(number);
+    }
+
+    @Override
+    public void expireAt(final BuildRecord build, final long time) {
+        if (kept.get(build.getNumber())) expiries.put(build.getNumber(), time);
+    }
+
+    @Override
+    public Run<?, ?> getRun(final BuildRecord build) {
+        return builds.getRun(build);
+    }
+
+    @Override
+    public String getParameter(final BuildRecord build, final String name) {
+        return builds.getParameter(build, name);
+    }
+
+    @Override
+    public long getDuration(final BuildRecord build) {
+        return builds.getDuration(build);
+    }
+
+    @Override
+    public long getAccessCount() {
+        return builds.getAccessCount();
+    }
+
+    @Override
+    public long getKeepCount() {
+        return builds.getKeepCount();
+    }
+
+    private BuildRecord simulated(final BuildRecord build) {
+        if (build == null) return null;
+        final boolean keepLog = keptByUser.get(build.getNumber()) || kept.get(build.getNumber());
+        if (build.isKeepLog() == keepLog) return build;
+        return new BuildRecord(build.getNumber(), build.getTimestamp(), build.getResult(), keepLog);
+    }
+
+}
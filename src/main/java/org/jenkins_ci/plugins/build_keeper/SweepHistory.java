@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The history a sweep replays a policy over. It remembers which builds the policy kept, and on a dry run keeps them
+ * only in a copy of the kept build index, so the policy sees its own decisions without any build being changed.
+ */
+class SweepHistory extends BuildHistory {
+
+    private final BuildHistory builds;
+    private final boolean dryRun;
+    private final List<Integer> kept = new ArrayList<Integer>();
+    private KeptBuildIndex keptBuilds;
+
+    SweepHistory(final BuildHistory builds, final boolean dryRun) {
+        this.builds = builds;
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * @return the builds kept by the sweep that were not already kept
+     */
+    List<Integer> getKept() {
+        return kept;
+    }
+
+    @Override
+    public BuildRecord getLastBuild() {
+        return builds.getLastBuild();
+    }
+
+    @Override
+    public BuildRecord getBuild(final int number) {
+        return builds.getBuild(number);
+    }
+
+    @Override
+    public BuildRecord getPreviousBuild(final BuildRecord build) {
+        return builds.getPreviousBuild(build);
+    }
+
+    @Override
+    public KeptBuildIndex getKeptBuilds() {
+        if (!dryRun) return builds.getKeptBuilds();
+        if (keptBuilds == null) keptBuilds = builds.getKeptBuilds().copy();
+        return keptBuilds;
+    }
+
+    @Override
+    public PluginKeptBuilds getPluginKeptBuilds() {
+        return builds.getPluginKeptBuilds();
+    }
+
+    @Override
+    public void keepLog(final BuildRecord build, final boolean keep) throws IOException {
+        if (keep && !build.isKeepLog() && !getKeptBuilds().isKept(build.getNumber()))
+            kept.add(build.getNumber());
+        if (dryRun) {
+            getKeptBuilds().update(build.getNumber(), build.getTimestamp(), keep);
+        } else {
+            builds.keepLog(build, keep);
+        }
+    }
+
+    @Override
+    public void expireAt(final BuildRecord build, final long time) {
+        if (!dryRun) builds.expireAt(build, time);
+    }
+
+    @Override
+    public Run<?, ?> getRun(final BuildRecord build) {
+        return builds.getRun(build);
+    }
+
+    @Override
+    public String getParameter(final BuildRecord build, final String name) {
+        return builds.getParameter(build, name);
+    }
+
+    @Override
+    public long getDuration(final BuildRecord build) {
+        return builds.getDuration(build);
+    }
+
+    /**
+     * A dry run keeps its builds apart from the job's indexes of kept builds, but a sweep keeps them in those indexes,
+     * so that the builds it keeps are released like any other.
+     */
+    @Override
+    public Object getKey() {
+        return dryRun ? this : builds.getKey();
+    }
+
+    /**
+     * Policies that fold what they have seen forward start from scratch for a sweep, dry run or not, as the job's own
+     * state has already seen the builds the sweep replays, and a sweep must not move it back.
+     */
+    @Override
+    public Object getStateKey() {
+        return this;
+    }
+
+    /**
+     * @return what identifies the job, to lock it against decisions for builds as they complete
+     */
+    Object getJobKey() {
+        return builds.getKey();
+    }
+
+    @Override
+    public long getAccessCount() {
+        return builds.getAccessCount();
+    }
+
+    @Override
+    public long getKeepCount() {
+        return builds.getKeepCount();
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+/**
+ * Adapts how much the {@link BackgroundSweep} does to how busy the controller is. The sweep stops for the cycle while
+ * the load average per processor is over the limit. The builds each job gets per cycle are halved after a batch in
+ * which reading builds was slower than the target, and grow again by a tenth of the limit after one that was not.
+ * While reads are slow the sweep also waits as long as a read takes before the next one.
+ */
+public class SweepThrottle {
+
+    private static final double WEIGHT = 0.2;
+
+    private final int maxBatch;
+    private final double maxLoad;
+    private final long targetLatency;
+    private int batch;
+    private long latency;
+
+    /**
+     * @param maxLoad the load average per processor above which the sweep stops, 0 for no limit
+     * @param targetLatency nanoseconds that reading a build may take before the sweep slows down
+     */
+    SweepThrottle(final int maxBatch, final double maxLoad, final long targetLatency) {
+        this.maxBatch = maxBatch;
+        this.maxLoad = maxLoad;
+        this.targetLatency = targetLatency;
+        batch = maxBatch;
+    }
+
+    /**
+     * @param load the load average per processor, negative if it is not available
+     */
+    boolean isOverloaded(final double load) {
+        return (maxLoad > 0) && (load > maxLoad);
+    }
+
+    void read(final long nanos) {
+        latency = latency == 0 ? nanos : latency + (long) (WEIGHT * (nanos - latency));
+    }
+
+    /**
+     * @return the moving average of the nanoseconds taken to read a build
+     */
+    long getLatency() {
+        return latency;
+    }
+
+    boolean isSlow() {
+        return latency > targetLatency;
+    }
+
+    /**
+     * @return nanoseconds to wait before reading the next build
+     */
+    long getPause() {
+        return isSlow() ? latency : 0;
+    }
+
+    int getBatch() {
+        return batch;
+    }
+
+    void batchDone() {
+        batch = isSlow() ? Math.max(1, batch / 2) : Math.min(maxBatch, batch + Math.max(1, maxBatch / 10));
+    }
+
+}
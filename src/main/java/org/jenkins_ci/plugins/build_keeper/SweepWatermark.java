@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.XmlFile;
+import hudson.model.Job;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * How far the {@link BackgroundSweep} has got through the builds of a job: the next build to evaluate, and the last
+ * build that completed before the policy was first seen, as every build after it is evaluated as it completes.
+ * Saved with the job, with a hash of the policy so that a changed policy starts again from the first build.
+ */
+public class SweepWatermark {
+
+    static final String FILE_NAME = "build-keeper-watermark.xml";
+
+    private static final Logger LOGGER = Logger.getLogger(SweepWatermark.class.getName());
+
+    private int policy;
+    private int next;
+    private int last;
+    private transient XmlFile file;
+
+    SweepWatermark() {
+    }
+
+    static SweepWatermark of(final Job<?, ?> job) {
+        final XmlFile file = new XmlFile(new File(job.getRootDir(), FILE_NAME));
+        SweepWatermark watermark = null;
+        if (file.exists()) {
+            try {
+                watermark = (SweepWatermark) file.read();
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Failed to read " + file.getFile() + ", sweeping from the first build", ioe);
+            } catch (ClassCastException cce) {
+                LOGGER.log(Level.WARNING, "Unexpected content in " + file.getFile(), cce);
+            }
+        }
+        if (watermark == null) watermark = new SweepWatermark();
+        watermark.file = file;
+        return watermark;
+    }
+
+    /**
+     * Start again from the first build if the policy is not the one the watermark was left by.
+     *
+     * @return true if the watermark was reset
+     */
+    boolean reset(final int policy, final int first, final int last) {
+        if ((this.policy == policy) && (next > 0)) return false;
+        this.policy = policy;
+        next = Math.max(1, first);
+        this.last = last;
+        return true;
+    }
+
+    boolean isSwept() {
+        return next > last;
+    }
+
+    int getNext() {
+        return next;
+    }
+
+    int getLast() {
+        return last;
+    }
+
+    void advance(final int next) {
+        this.next = Math.max(this.next, next);
+    }
+
+    void save() throws IOException {
+        if (file != null) file.write(this);
+    }
+
+}
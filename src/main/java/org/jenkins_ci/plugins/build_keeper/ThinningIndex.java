@@ -0,0 +1,269 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The builds kept by a {@link ThinningPolicy} in timestamp order. A build kept for one tier is released when it ages
+ * into the next tier and an older kept build is already in the same bucket of that tier, so each completion only
+ * looks at the builds that have just crossed a tier boundary, and at the build before each of them.
+ *
+ * Saved with the job, so the policy only ever releases builds that it kept.
+ */
+public class ThinningIndex {
+
+    static final String FILE_NAME = "build-keeper-thinning.xml";
+    static final int DAILY = 1;
+    static final int WEEKLY = 2;
+    static final int MONTHLY = 3;
+
+    private static final Logger LOGGER = Logger.getLogger(ThinningIndex.class.getName());
+    private static final Map<Object, ThinningIndex> INDEXES = Collections.synchronizedMap(new WeakHashMap<Object, ThinningIndex>());
+
+    private long now;
+    private int[] numbers = new int[0];
+    private long[] timestamps = new long[0];
+    private transient TreeSet<Kept> kept;
+    private transient XmlFile file;
+    private transient PeriodCalendar calendar;
+
+    ThinningIndex() {
+        readResolve();
+    }
+
+    static ThinningIndex of(final BuildHistory history) {
+        final Object key = history.getKey();
+        synchronized (INDEXES) {
+            ThinningIndex index = INDEXES.get(key);
+            if (index == null) {
+                index = key instanceof Job ? load(new XmlFile(new File(((Job<?, ?>) key).getRootDir(), FILE_NAME)))
+                                           : new ThinningIndex();
+                INDEXES.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    static ThinningIndex peek(final Job<?, ?> job) {
+        return INDEXES.get(job);
+    }
+
+    private static ThinningIndex load(final XmlFile file) {
+        ThinningIndex index = null;
+        if (file.exists()) {
+            try {
+                index = (ThinningIndex) file.read();
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Failed to read " + file.getFile() + ", builds it kept will not be released", ioe);
+            } catch (ClassCastException cce) {
+                LOGGER.log(Level.WARNING, "Unexpected content in " + file.getFile(), cce);
+            }
+        }
+        if (index == null) index = new ThinningIndex();
+        index.file = file;
+        return index;
+    }
+
+    protected Object readResolve() {
+        kept = new TreeSet<Kept>();
+        for (int i = 0; i < numbers.length; i++)
+            kept.add(new Kept(numbers[i], timestamps[i]));
+        calendar = new PeriodCalendar(ZoneId.systemDefault());
+        return this;
+    }
+
+    synchronized void add(final int number, final long timestamp) {
+        kept.add(new Kept(number, timestamp));
+    }
+
+    synchronized void remove(final int number, final long timestamp) {
+        kept.remove(new Kept(number, timestamp));
+    }
+
+    synchronized int size() {
+        return kept.size();
+    }
+
+    synchronized int[] getNumbers() {
+        final int[] kept = new int[this.kept.size()];
+        int i = 0;
+        for (Kept build : this.kept)
+            kept[i++] = build.number;
+        return kept;
+    }
+
+    /**
+     * Move the present forward, thinning out the builds that have aged into a coarser tier.
+     *
+     * @param recentDays the number of days for which every build is kept
+     * @return the numbers of the builds to release
+     */
+    synchronized List<Integer> advance(final long present, final int recentDays) {
+        final List<Integer> released = new ArrayList<Integer>();
+        final long previous = now;
+        if (present <= previous) return released;
+        now = present;
+        for (int tier = DAILY; tier <= MONTHLY; tier++) {
+            final long boundary = boundary(tier, recentDays);
+            // builds older than the boundary now, but not at the last evaluation
+            final Kept from = new Kept(Integer.MIN_VALUE, previous == 0 ? Long.MIN_VALUE : previous - boundary);
+            final Kept to = new Kept(Integer.MIN_VALUE, present - boundary);
+            for (Kept crossed : new ArrayList<Kept>(kept.subSet(from, to))) {
+                final Kept before = kept.lower(crossed);
+                if ((before != null) && (bucket(tier, before.timestamp) == bucket(tier, crossed.timestamp))) {
+                    kept.remove(crossed);
+                    released.add(crossed.number);
+                }
+            }
+        }
+        return released;
+    }
+
+    /**
+     * @return true if a build older than the present, such as one reached by a sweep, is in a tier bucket that
+     *         already has a kept build
+     */
+    synchronized boolean isCovered(final long timestamp, final int recentDays) {
+        int tier = 0;
+        while ((tier < MONTHLY) && (timestamp < now - boundary(tier + 1, recentDays))) tier++;
+        if (tier == 0) return false;
+        final Kept build = new Kept(Integer.MIN_VALUE, timestamp);
+        final Kept before = kept.lower(build);
+        final Kept after = kept.ceiling(build);
+        return ((before != null) && (bucket(tier, before.timestamp) == bucket(tier, timestamp)))
+            || ((after != null) && (bucket(tier, after.timestamp) == bucket(tier, timestamp)));
+    }
+
+    /**
+     * @return the age at which a build moves into the tier
+     */
+    static long boundary(final int tier, final int recentDays) {
+        long boundary = recentDays * PeriodCalendar.DAY;
+        if (tier > DAILY) boundary += 7 * PeriodCalendar.DAY;
+        if (tier > WEEKLY) boundary += 91 * PeriodCalendar.DAY;
+        return boundary;
+    }
+
+    long bucket(final int tier, final long timestamp) {
+        if (tier == DAILY) return calendar.toEpochDay(timestamp);
+        if (tier == WEEKLY) return calendar.toEpochWeek(timestamp);
+        return calendar.toEpochMonth(timestamp);
+    }
+
+    synchronized void save() {
+        if (file == null) return;
+        numbers = new int[kept.size()];
+        timestamps = new long[kept.size()];
+        int i = 0;
+        for (Kept build : kept) {
+            numbers[i] = build.number;
+            timestamps[i++] = build.timestamp;
+        }
+        try {
+            file.write(this);
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Failed to save " + file.getFile(), ioe);
+        }
+    }
+
+    private static class Kept implements Comparable<Kept> {
+
+        private final int number;
+        private final long timestamp;
+
+        Kept(final int number, final long timestamp) {
+            this.number = number;
+            this.timestamp = timestamp;
+        }
+
+        public int compareTo(final Kept other) {
+            if (timestamp != other.timestamp) return timestamp < other.timestamp ? -1 : 1;
+            return number < other.number ? -1 : number == other.number ? 0 : 1;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return (other instanceof Kept) && (compareTo((Kept) other) == 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * number + (int) (timestamp ^ (timestamp >>> 32));
+        }
+
+    }
+
+    /**
+     * A build that is no longer kept, or no longer exists, must not stand for its bucket.
+     */
+    private static void released(final Run<?, ?> run) {
+        final ThinningIndex index = peek(run.getParent());
+        if (index == null) return;
+        synchronized (index) {
+            if (index.kept.remove(new Kept(run.getNumber(), run.getTimeInMillis()))) index.save();
+        }
+    }
+
+    @Extension
+    public static class KeepLogListener extends SaveableListener {
+
+        @Override
+        public void onChange(final Saveable o, final XmlFile file) {
+            if ((o instanceof Run) && !((Run<?, ?>) o).isKeepLog())
+                released((Run<?, ?>) o);
+        }
+
+    }
+
+    @Extension
+    public static class DeletedRunListener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onDeleted(final Run<?, ?> run) {
+            released(run);
+        }
+
+    }
+
+}
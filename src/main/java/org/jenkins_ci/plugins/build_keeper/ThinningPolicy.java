@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Extension;
+import hudson.model.BuildListener;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.IOException;
+
+/**
+ * Keeps every build for the last buildPeriod days, then one a day for a week, one a week for a quarter and one a
+ * month after that, releasing the builds it kept as they age out of their tier.
+ */
+public class ThinningPolicy extends PeriodAndFailedPolicy {
+
+    @DataBoundConstructor
+    public ThinningPolicy(final int buildPeriod, final boolean dontKeepFailed) {
+        super(buildPeriod, dontKeepFailed);
+    }
+
+    @Override
+    public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
+        final ThinningIndex index = ThinningIndex.of(history);
+        synchronized (index) {
+            final int recentDays = Math.max(1, getBuildPeriod());
+            boolean changed = false;
+            if (!build.isKeepLog() && isKeepable(build) && !index.isCovered(build.getTimestamp(), recentDays)) {
+                keep(history, build);
+                index.add(build.getNumber(), build.getTimestamp());
+                changed = true;
+            }
+            for (int number : index.advance(build.getTimestamp(), recentDays)) {
+                final BuildRecord released = history.getBuild(number);
+                if (released != null) history.keepLog(released, false);
+                changed = true;
+            }
+            // only a change of the kept buckets is worth a write; the present is caught up on the next one
+            if (changed) index.save();
+        }
+    }
+
+    @Override
+    public int getEvaluationCost() {
+        return 10;
+    }
+
+    @Extension
+    public static class ThinningPolicyDescriptor extends PeriodAndFailedPolicyDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.thinningPolicy_displayName();
+        }
+
+        @Override
+        public int getDefaultBuildPeriod() {
+            return 1;
+        }
+
+    }
+
+}
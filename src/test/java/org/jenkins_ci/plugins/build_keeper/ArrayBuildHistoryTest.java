@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArrayBuildHistoryTest {
+
+    private static final BuildListener LISTENER = null;
+
+    @Test
+    public void testEvery3KeepsFirstAndFourthBuild() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final BuildNumberPolicy policy = new BuildNumberPolicy(3, false);
+        for (int i = 0; i < 5; i++)
+            policy.apply(history, history.add(i, Result.FAILURE), LISTENER);
+        assertArrayEquals(new int[] {1, 4}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testDoesNotMarkFailedButMarksNextSuccess() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final KeepSincePolicy policy = new KeepSincePolicy(3, true);
+        final int[] successful = {1, 5, 10, 11, 12, 13};
+        for (int number = 1; number <= 16; number++) {
+            final Result result = contains(successful, number) ? Result.SUCCESS : Result.FAILURE;
+            policy.apply(history, history.add(number, result), LISTENER);
+        }
+        assertArrayEquals(new int[] {1, 5, 10, 13}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testKeepSinceNeverKeepsTwoBuildsWithinThePeriod() throws Exception {
+        final ArrayBuildHistory history = SyntheticHistory.generate(1000000, 0.3, 100, true, 0);
+        final ArrayBuildHistory replay = new ArrayBuildHistory(history.size());
+        final KeepSincePolicy policy = new KeepSincePolicy(50, true);
+        for (int number = 1; number <= history.size(); number++) {
+            final BuildRecord build = history.getBuild(number);
+            policy.apply(replay, replay.add(build.getTimestamp(), build.getResult()), LISTENER);
+        }
+        int last = 0;
+        for (int kept : replay.getKeptNumbers()) {
+            assertEquals(Result.SUCCESS, replay.getBuild(kept).getResult());
+            if (last > 0) {
+                assertTrue(kept - last >= 50);
+                for (int number = last + 50; number < kept; number++)
+                    assertEquals(Result.FAILURE, replay.getBuild(number).getResult());
+            }
+            last = kept;
+        }
+        assertTrue(replay.getKeptCount() > 1000000 / 100);
+    }
+
+    @Test
+    public void testByDayKeepsFirstSuccessOfEachDay() throws Exception {
+        final Calendar start = Calendar.getInstance();
+        start.set(2011, Calendar.JULY, 18, 0, 0, 0);
+        start.set(Calendar.MILLISECOND, 0);
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ByDayPolicy policy = new ByDayPolicy(1);
+        final Calendar timestamp = (Calendar) start.clone();
+        for (int number = 1; number <= 24 * 100; number++) {
+            final Result result = timestamp.get(Calendar.HOUR_OF_DAY) < 3 ? Result.FAILURE : Result.SUCCESS;
+            policy.apply(history, history.add(timestamp.getTimeInMillis(), result), LISTENER);
+            timestamp.add(Calendar.HOUR_OF_DAY, 1);
+        }
+        assertEquals(100, history.getKeptCount());
+        for (int kept : history.getKeptNumbers())
+            assertEquals(3, (kept - 1) % 24);
+    }
+
+    @Test
+    public void testKeepFirstFailedInEachRun() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final KeepFirstFailedPolicy policy = new KeepFirstFailedPolicy(3);
+        final int[] successful = {1, 2, 6};
+        for (int number = 1; number <= 11; number++) {
+            final Result result = contains(successful, number) ? Result.SUCCESS : Result.FAILURE;
+            policy.apply(history, history.add(number, result), LISTENER);
+        }
+        assertArrayEquals(new int[] {3, 7}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testHistoryCountsAccesses() {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        history.add(1, Result.SUCCESS);
+        final BuildRecord last = history.add(2, Result.FAILURE, true);
+        assertEquals(0, history.getAccessCount());
+        assertEquals(1, history.getPreviousBuild(last).getNumber());
+        assertEquals(null, history.getPreviousBuild(history.getBuild(1)));
+        assertEquals(2, history.getAccessCount());
+        assertTrue(history.isKeepLog(2));
+        assertFalse(history.isKeepLog(1));
+        assertEquals(2, history.getKeptBuilds().getLastKeptNumber());
+    }
+
+    private static boolean contains(final int[] numbers, final int number) {
+        for (int candidate : numbers)
+            if (candidate == number) return true;
+        return false;
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BackgroundSweepTest {
+
+    private static final long TARGET = 1000000000L;
+
+    @Test
+    public void testEachCycleEvaluatesOneBatchFromTheWatermark() throws Exception {
+        final ArrayBuildHistory history = history(25, 0);
+        final SweepWatermark watermark = new SweepWatermark();
+        assertTrue(watermark.reset(1, 1, 25));
+        final SweepThrottle throttle = new SweepThrottle(10, 0, TARGET);
+        final BuildKeeperPolicy policy = new BuildNumberPolicy(3, false);
+        assertEquals(10, BackgroundSweep.sweep(policy, new SweepHistory(history, false), watermark, throttle, null));
+        assertEquals(11, watermark.getNext());
+        assertArrayEquals(new int[] {1, 4, 7, 10}, history.getKeptNumbers());
+        assertEquals(10, BackgroundSweep.sweep(policy, new SweepHistory(history, false), watermark, throttle, null));
+        assertEquals(5, BackgroundSweep.sweep(policy, new SweepHistory(history, false), watermark, throttle, null));
+        assertTrue(watermark.isSwept());
+        assertEquals(0, BackgroundSweep.sweep(policy, new SweepHistory(history, false), watermark, throttle, null));
+        assertArrayEquals(new int[] {1, 4, 7, 10, 13, 16, 19, 22, 25}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testSweepWaitsForBuildThatHasNotCompleted() throws Exception {
+        final ArrayBuildHistory history = history(10, 6);
+        final SweepWatermark watermark = new SweepWatermark();
+        watermark.reset(1, 1, 10);
+        assertEquals(5, BackgroundSweep.sweep(new BuildNumberPolicy(1, false), new SweepHistory(history, false), watermark,
+                                              new SweepThrottle(100, 0, TARGET), null));
+        assertEquals(6, watermark.getNext());
+        assertFalse(watermark.isSwept());
+    }
+
+    @Test
+    public void testSweepLeavesTheLiveStateOfThePolicyAlone() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int number = 1; number <= 20; number++) {
+            final boolean failed = ((number >= 8) && (number <= 12)) || ((number >= 18) && (number <= 19));
+            history.add(number, failed ? Result.FAILURE : Result.SUCCESS);
+        }
+        final KeepFirstFailedPolicy policy = new KeepFirstFailedPolicy(3);
+        policy.apply(history, history.getLastBuild(), null);
+        final SweepWatermark watermark = new SweepWatermark();
+        watermark.reset(1, 1, 19);
+        final SweepThrottle throttle = new SweepThrottle(10, 0, TARGET);
+        // one cycle at a time, the second starting part way through the streak from #8
+        final SweepHistory sweep = new SweepHistory(history, false);
+        while (!watermark.isSwept())
+            BackgroundSweep.sweep(policy, sweep, watermark, throttle, null);
+        assertArrayEquals(new int[] {8}, history.getKeptNumbers());
+        for (int number = 21; number <= 23; number++)
+            policy.apply(history, history.add(number, Result.FAILURE), null);
+        assertArrayEquals(new int[] {8, 21}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testLaterBatchesReleaseBuildsKeptByEarlierOnes() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int number = 1; number <= 25; number++) {
+            history.add(number, Result.SUCCESS);
+            history.setParameter(number, "ENV", number % 2 == 0 ? "dev" : "prod");
+        }
+        final ParameterValuePolicy policy = new ParameterValuePolicy("ENV");
+        final SweepWatermark watermark = new SweepWatermark();
+        watermark.reset(1, 1, 25);
+        final SweepThrottle throttle = new SweepThrottle(10, 0, TARGET);
+        final SweepHistory sweep = new SweepHistory(history, false);
+        int cycles = 0;
+        while (!watermark.isSwept()) {
+            BackgroundSweep.sweep(policy, sweep, watermark, throttle, null);
+            cycles++;
+        }
+        assertEquals(3, cycles);
+        assertArrayEquals(new int[] {24, 25}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testChangedPolicyStartsAgainFromTheFirstBuild() {
+        final SweepWatermark watermark = new SweepWatermark();
+        assertTrue(watermark.reset(1, 3, 10));
+        assertEquals(3, watermark.getNext());
+        watermark.advance(11);
+        assertFalse(watermark.reset(1, 3, 20));
+        assertTrue(watermark.isSwept());
+        assertTrue(watermark.reset(2, 5, 20));
+        assertEquals(5, watermark.getNext());
+        assertEquals(20, watermark.getLast());
+    }
+
+    private static ArrayBuildHistory history(final int size, final int running) {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int number = 1; number <= size; number++)
+            history.add(number, number == running ? null : Result.SUCCESS);
+        return history;
+    }
+
+}
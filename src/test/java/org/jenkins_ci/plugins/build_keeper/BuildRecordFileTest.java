@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Result;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BuildRecordFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadsBackWhatWasWritten() throws Exception {
+        final File jobDir = folder.newFolder();
+        final BuildRecordFile records = open(jobDir, 1);
+        records.write(1, 1000L, Result.SUCCESS, true);
+        records.write(2, 2000L, Result.FAILURE, false);
+        records.write(3, 3000L, null, false);
+        assertRecord(records.read(1), 1000L, Result.SUCCESS, true);
+        assertRecord(records.read(2), 2000L, Result.FAILURE, false);
+        assertRecord(records.read(3), 3000L, null, false);
+        assertEquals(BuildRecordFile.UNKNOWN, records.state(4));
+        records.close();
+    }
+
+    @Test
+    public void testRecordsSurviveReopen() throws Exception {
+        final File jobDir = folder.newFolder();
+        BuildRecordFile records = open(jobDir, 1);
+        for (int i = 1; i <= 5000; i++) {
+            mkBuildDir(jobDir, i);
+            records.write(i, i, Result.UNSTABLE, i % 10 == 0);
+        }
+        records.close();
+        records = open(jobDir, 5001);
+        assertRecord(records.read(4990), 4990L, Result.UNSTABLE, true);
+        assertRecord(records.read(4999), 4999L, Result.UNSTABLE, false);
+        records.close();
+    }
+
+    @Test
+    public void testPluginMarkLastsUntilBuildIsNoLongerKept() throws Exception {
+        final File jobDir = folder.newFolder();
+        for (int number = 1; number <= 3; number++)
+            mkBuildDir(jobDir, number);
+        BuildRecordFile records = open(jobDir, 1);
+        records.write(1, 1000L, Result.SUCCESS, true);
+        records.write(2, 2000L, Result.SUCCESS, true);
+        records.write(3, 3000L, Result.SUCCESS, false);
+        records.setKeptByPlugin(2, true);
+        records.setKeptByPlugin(3, true);
+        assertFalse(records.isKeptByPlugin(1));
+        assertTrue(records.isKeptByPlugin(2));
+        assertFalse(records.isKeptByPlugin(3));
+        records.write(2, 2000L, Result.SUCCESS, true);
+        assertTrue(records.isKeptByPlugin(2));
+        records.close();
+        records = open(jobDir, 4);
+        assertEquals(Arrays.asList(2), records.getKeptByPlugin());
+        records.write(2, 2000L, Result.SUCCESS, false);
+        assertFalse(records.isKeptByPlugin(2));
+        records.write(2, 2000L, Result.SUCCESS, true);
+        assertFalse(records.isKeptByPlugin(2));
+        records.close();
+    }
+
+    @Test
+    public void testMissingBuildDirectoriesAreRecordedAsAbsent() throws Exception {
+        final File jobDir = folder.newFolder();
+        mkBuildDir(jobDir, 1);
+        mkBuildDir(jobDir, 3);
+        final BuildRecordFile records = open(jobDir, 4);
+        records.write(4, 4000L, Result.SUCCESS, false);
+        assertEquals(BuildRecordFile.UNKNOWN, records.state(1));
+        assertEquals(BuildRecordFile.ABSENT, records.state(2));
+        assertEquals(BuildRecordFile.UNKNOWN, records.state(3));
+        records.remove(4);
+        assertEquals(BuildRecordFile.ABSENT, records.state(4));
+        records.close();
+    }
+
+    @Test
+    public void testTornSlotReadsAsUnknown() throws Exception {
+        final File jobDir = folder.newFolder();
+        BuildRecordFile records = open(jobDir, 1);
+        mkBuildDir(jobDir, 1);
+        mkBuildDir(jobDir, 2);
+        records.write(1, 1000L, Result.SUCCESS, false);
+        records.write(2, 2000L, Result.SUCCESS, false);
+        records.close();
+        final RandomAccessFile raw = new RandomAccessFile(new File(jobDir, BuildRecordFile.FILE_NAME), "rw");
+        raw.seek(24 + 20 + 4);
+        raw.writeLong(12345L);
+        raw.close();
+        records = open(jobDir, 3);
+        assertEquals(BuildRecordFile.PRESENT, records.state(1));
+        assertEquals(BuildRecordFile.UNKNOWN, records.state(2));
+        records.close();
+    }
+
+    @Test
+    public void testReconcilesWithBuildDirectoriesAfterUncleanShutdown() throws Exception {
+        final File jobDir = folder.newFolder();
+        mkBuildDir(jobDir, 1);
+        mkBuildDir(jobDir, 2);
+        final BuildRecordFile crashed = open(jobDir, 1);
+        crashed.write(1, 1000L, Result.SUCCESS, true);
+        crashed.write(2, 2000L, Result.SUCCESS, false);
+        assertTrue(new File(jobDir, "builds/1").delete());
+        final BuildRecordFile records = open(jobDir, 3);
+        assertEquals(BuildRecordFile.ABSENT, records.state(1));
+        assertFalse(records.read(2).isKeepLog());
+        assertNull(records.read(1));
+        records.close();
+        crashed.close();
+    }
+
+    @Test
+    public void testBuildsChangedWhileClosedReadAsUnknownUntilRecordedAgain() throws Exception {
+        final File jobDir = folder.newFolder();
+        BuildRecordFile records = open(jobDir, 1);
+        for (int number = 1; number <= 3; number++) {
+            mkBuildDir(jobDir, number);
+            records.write(number, number * 1000L, Result.SUCCESS, true);
+            records.setKeptByPlugin(number, true);
+        }
+        assertTrue(new File(jobDir, "builds/1/build.xml").createNewFile());
+        assertTrue(new File(jobDir, "builds/1/build.xml").setLastModified(System.currentTimeMillis() - 60000));
+        records.close();
+        assertTrue(new File(jobDir, "builds/2/build.xml").createNewFile());
+        assertTrue(new File(jobDir, "builds/3/build.xml").createNewFile());
+        records = open(jobDir, 4);
+        assertEquals(BuildRecordFile.PRESENT, records.state(1));
+        assertEquals(BuildRecordFile.UNKNOWN, records.state(2));
+        assertEquals(BuildRecordFile.UNKNOWN, records.state(3));
+        assertEquals(Arrays.asList(1), records.getKeptByPlugin());
+        assertEquals(Arrays.asList(2, 3), records.getStaleKeptByPlugin());
+        records.write(2, 2000L, Result.SUCCESS, true);
+        records.write(3, 3000L, Result.FAILURE, false);
+        assertTrue(records.isKeptByPlugin(2));
+        assertRecord(records.read(3), 3000L, Result.FAILURE, false);
+        assertEquals(Arrays.asList(1, 2), records.getKeptByPlugin());
+        assertTrue(records.getStaleKeptByPlugin().isEmpty());
+        records.close();
+    }
+
+    private BuildRecordFile open(final File jobDir, final int nextBuildNumber) throws Exception {
+        return new BuildRecordFile(new File(jobDir, BuildRecordFile.FILE_NAME), new File(jobDir, "builds"), nextBuildNumber);
+    }
+
+    private static void mkBuildDir(final File jobDir, final int number) {
+        assertTrue(new File(jobDir, "builds/" + number).mkdirs());
+    }
+
+    private static void assertRecord(final BuildRecord record, final long timestamp, final Result result, final boolean keepLog) {
+        assertEquals(timestamp, record.getTimestamp());
+        assertEquals(result, record.getResult());
+        assertEquals(keepLog, record.isKeepLog());
+    }
+
+}
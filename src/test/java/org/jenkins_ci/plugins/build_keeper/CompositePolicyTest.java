@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CompositePolicyTest {
+
+    private static final BuildListener LISTENER = null;
+
+    @Test
+    public void testOrKeepsWhatAnyPolicyKeeps() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final CompositePolicy policy = new CompositePolicy(Arrays.<BuildKeeperPolicy>asList(
+                new BuildNumberPolicy(5, false), new KeepFirstFailedPolicy(2)), CompositePolicy.Operator.OR);
+        apply(policy, history, "SSFFFSSSSS");
+        assertArrayEquals(new int[] {1, 3, 6}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testAndKeepsWhatEveryPolicyKeeps() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final CompositePolicy policy = new CompositePolicy(Arrays.<BuildKeeperPolicy>asList(
+                new BuildNumberPolicy(2, false), new BuildNumberPolicy(3, true)), CompositePolicy.Operator.AND);
+        apply(policy, history, "SSSSSSFSSSSSS");
+        assertArrayEquals(new int[] {1, 13}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testAndReleasesEvenWhenItKeepsNothing() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final CompositePolicy policy = new CompositePolicy(Arrays.<BuildKeeperPolicy>asList(
+                new ReleasePrevious(0, true), new BuildNumberPolicy(2, false)), CompositePolicy.Operator.AND);
+        apply(policy, history, "SSSSS");
+        // each even build releases the odd build before it, though the build number policy does not keep it
+        assertArrayEquals(new int[] {5}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testAndReleasesWhatThinningForgets() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final CompositePolicy policy = new CompositePolicy(Arrays.<BuildKeeperPolicy>asList(
+                new ThinningPolicy(1, false), new BuildNumberPolicy(1, false)), CompositePolicy.Operator.AND);
+        for (long time = PeriodCalendar.DAY / 24; time < 60 * PeriodCalendar.DAY; time += PeriodCalendar.DAY / 24)
+            policy.apply(history, history.add(time, Result.SUCCESS), null);
+        final ThinningIndex index = ThinningIndex.of(history);
+        assertArrayEquals(index.getNumbers(), history.getKeptNumbers());
+    }
+
+    @Test
+    public void testFirstMatchReleasesForPoliciesItDoesNotUse() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final CompositePolicy policy = new CompositePolicy(Arrays.<BuildKeeperPolicy>asList(
+                new WalkBack(1, 0, true), new ReleasePrevious(0, false)), CompositePolicy.Operator.FIRST_MATCH);
+        apply(policy, history, "SSSSS");
+        assertArrayEquals(new int[] {5}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testFirstMatchStopsAtFirstPolicyThatKeeps() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final WalkBack cheap = new WalkBack(1, 5, true);
+        final WalkBack expensive = new WalkBack(2, 5, true);
+        final CompositePolicy policy = new CompositePolicy(Arrays.<BuildKeeperPolicy>asList(expensive, cheap),
+                                                           CompositePolicy.Operator.FIRST_MATCH);
+        apply(policy, history, "SSSSSSSSSS");
+        assertEquals(10, cheap.evaluations);
+        assertEquals(0, expensive.evaluations);
+        assertEquals(10, history.getKeptCount());
+    }
+
+    @Test
+    public void testBuildsAreLoadedOnceForAllPolicies() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        apply(new CompositePolicy(Arrays.<BuildKeeperPolicy>asList(new WalkBack(1, 10, false), new WalkBack(1, 20, false)),
+                                  CompositePolicy.Operator.OR), history, "SSSSSSSSSSSSSSSSSSSSSSSSS");
+        final ArrayBuildHistory separately = new ArrayBuildHistory();
+        final WalkBack first = new WalkBack(1, 10, false);
+        final WalkBack second = new WalkBack(1, 20, false);
+        for (int i = 0; i < 25; i++) {
+            final BuildRecord build = separately.add(i, Result.SUCCESS);
+            first.apply(separately, build, LISTENER);
+            second.apply(separately, build, LISTENER);
+        }
+        assertEquals(290, history.getAccessCount());
+        assertEquals(195 + 290, separately.getAccessCount());
+    }
+
+    private static void apply(final BuildKeeperPolicy policy, final ArrayBuildHistory history, final String results) throws IOException {
+        for (int i = 0; i < results.length(); i++)
+            policy.apply(history, history.add(i, results.charAt(i) == 'F' ? Result.FAILURE : Result.SUCCESS), LISTENER);
+    }
+
+    /**
+     * Releases the build before, then keeps the build or nothing.
+     */
+    private static class ReleasePrevious extends BuildKeeperPolicy {
+
+        private final int cost;
+        private final boolean keep;
+
+        ReleasePrevious(final int cost, final boolean keep) {
+            this.cost = cost;
+            this.keep = keep;
+        }
+
+        @Override
+        public int getEvaluationCost() {
+            return cost;
+        }
+
+        @Override
+        public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
+            final BuildRecord previous = history.getPreviousBuild(build);
+            if ((previous != null) && history.getKeptBuilds().isKept(previous.getNumber())) history.keepLog(previous, false);
+            if (keep) history.keepLog(build, true);
+        }
+
+    }
+
+    /**
+     * Walks back a number of builds, then keeps the build or nothing.
+     */
+    private static class WalkBack extends BuildKeeperPolicy {
+
+        private final int cost;
+        private final int builds;
+        private final boolean keep;
+        private int evaluations;
+
+        WalkBack(final int cost, final int builds, final boolean keep) {
+            this.cost = cost;
+            this.builds = builds;
+            this.keep = keep;
+        }
+
+        @Override
+        public int getEvaluationCost() {
+            return cost;
+        }
+
+        @Override
+        public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) throws IOException {
+            evaluations++;
+            BuildRecord previous = build;
+            for (int i = 0; (i < builds) && (previous != null); i++)
+                previous = history.getPreviousBuild(previous);
+            if (keep) history.keepLog(build, true);
+        }
+
+    }
+
+}
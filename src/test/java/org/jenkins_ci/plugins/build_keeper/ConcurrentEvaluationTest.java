@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds of many jobs completing together on many threads, in no particular order.
+ */
+public class ConcurrentEvaluationTest {
+
+    private static final BuildListener LISTENER = null;
+    private static final int JOBS = 16;
+    private static final int BUILDS = 240;
+    private static final int THREADS = 32;
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testByDayKeepsExactlyOneBuildPerDay() throws Exception {
+        final ByDayPolicy policy = new ByDayPolicy(1);
+        policy.setTimeZone("UTC");
+        final List<ArrayBuildHistory> histories = evaluate(policy, new PolicyLocks(64));
+        for (ArrayBuildHistory history : histories) {
+            final int[] perDay = new int[BUILDS / 24];
+            for (int number : history.getKeptNumbers())
+                perDay[(number - 1) / 24]++;
+            for (int day = 0; day < perDay.length; day++)
+                assertEquals("day " + day, 1, perDay[day]);
+        }
+    }
+
+    @Test
+    public void testKeepSinceKeepsBuildsApartAndCoversEveryBuild() throws Exception {
+        final int period = 5;
+        final List<ArrayBuildHistory> histories = evaluate(new KeepSincePolicy(period, false), new PolicyLocks(64));
+        for (ArrayBuildHistory history : histories) {
+            final int[] kept = history.getKeptNumbers();
+            for (int i = 1; i < kept.length; i++)
+                assertTrue(kept[i - 1] + " and " + kept[i], kept[i] - kept[i - 1] >= period);
+            for (int number = 1; number <= BUILDS; number++) {
+                boolean covered = false;
+                for (int k : kept)
+                    covered |= Math.abs(k - number) < period;
+                assertTrue("#" + number, covered);
+            }
+        }
+    }
+
+    @Test
+    public void testJobsAreEvaluatedInParallel() throws Exception {
+        final Tracking policy = new Tracking();
+        evaluate(policy, new PolicyLocks(64));
+        assertEquals(1, policy.maxPerJob.get());
+        assertTrue("most at once " + policy.maxAtOnce.get(), policy.maxAtOnce.get() > 1);
+    }
+
+    private static List<ArrayBuildHistory> evaluate(final BuildKeeperPolicy policy, final PolicyLocks locks) throws Exception {
+        final List<ArrayBuildHistory> histories = new ArrayList<ArrayBuildHistory>();
+        final List<Callable<Void>> completions = new ArrayList<Callable<Void>>();
+        for (int job = 0; job < JOBS; job++) {
+            final ArrayBuildHistory history = new ArrayBuildHistory(BUILDS);
+            histories.add(history);
+            for (int i = 0; i < BUILDS; i++) {
+                final BuildRecord build = history.add(i * HOUR, Result.SUCCESS);
+                completions.add(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        final ReentrantLock lock = locks.lock(history.getKey());
+                        try {
+                            policy.apply(history, build, LISTENER);
+                        } finally {
+                            lock.unlock();
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+        Collections.shuffle(completions, new Random(7));
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (Future<Void> completion : executor.invokeAll(completions))
+                completion.get();
+        } finally {
+            executor.shutdown();
+        }
+        return histories;
+    }
+
+    private static class Tracking extends BuildKeeperPolicy {
+
+        private final AtomicInteger atOnce = new AtomicInteger();
+        private final AtomicInteger maxAtOnce = new AtomicInteger();
+        private final AtomicInteger maxPerJob = new AtomicInteger();
+        private final Map<Object, AtomicInteger> perJob = new ConcurrentHashMap<Object, AtomicInteger>();
+
+        @Override
+        public void apply(final BuildHistory history, final BuildRecord build, final BuildListener listener) {
+            AtomicInteger job = perJob.get(history.getKey());
+            if (job == null) {
+                perJob.putIfAbsent(history.getKey(), new AtomicInteger());
+                job = perJob.get(history.getKey());
+            }
+            max(maxPerJob, job.incrementAndGet());
+            max(maxAtOnce, atOnce.incrementAndGet());
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            atOnce.decrementAndGet();
+            job.decrementAndGet();
+        }
+
+        private static void max(final AtomicInteger max, final int value) {
+            int current;
+            while ((current = max.get()) < value && !max.compareAndSet(current, value)) { }
+        }
+
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultPoliciesTest {
+
+    @Test
+    public void testNearestFolderDefaultApplies() {
+        final BuildKeeperPolicy all = new BuildNumberPolicy(5, false);
+        final BuildKeeperPolicy team = new BuildNumberPolicy(10, false);
+        final BuildKeeperPolicy services = new ResultTransitionPolicy();
+        final Map<String, BuildKeeper> byFolder = DefaultPolicies.index(Arrays.asList(
+                new DefaultPolicy("", all), new DefaultPolicy("/team/", team), new DefaultPolicy("team/services", services)));
+        assertSame(services, DefaultPolicies.resolve(byFolder, "team/services/api").getPolicy());
+        assertSame(services, DefaultPolicies.resolve(byFolder, "team/services/inner/api").getPolicy());
+        assertSame(team, DefaultPolicies.resolve(byFolder, "team/web").getPolicy());
+        assertSame(team, DefaultPolicies.resolve(byFolder, "team/servicesx/api").getPolicy());
+        assertSame(all, DefaultPolicies.resolve(byFolder, "teams/web").getPolicy());
+        assertSame(all, DefaultPolicies.resolve(byFolder, "top").getPolicy());
+        assertTrue(DefaultPolicies.resolve(byFolder, "top").isAppliedOnCompletion());
+    }
+
+    @Test
+    public void testNoDefaultAppliesOutsideTheFolders() {
+        final Map<String, BuildKeeper> byFolder = DefaultPolicies.index(Arrays.asList(
+                new DefaultPolicy("team", new BuildNumberPolicy(5, false)), new DefaultPolicy("", null)));
+        assertNull(DefaultPolicies.resolve(byFolder, "other/job"));
+        assertNull(DefaultPolicies.resolve(byFolder, "team"));
+        assertFalse(byFolder.containsKey(""));
+    }
+
+    @Test
+    public void testFirstDefaultForAFolderWins() {
+        final BuildKeeperPolicy first = new BuildNumberPolicy(5, false);
+        final Map<String, BuildKeeper> byFolder = DefaultPolicies.index(Arrays.asList(
+                new DefaultPolicy("team", first), new DefaultPolicy("team", new BuildNumberPolicy(10, false))));
+        assertSame(first, DefaultPolicies.resolve(byFolder, "team/job").getPolicy());
+    }
+
+    @Test
+    public void testMovedDefaultKeepsItsSettings() {
+        final DefaultPolicy policy = new DefaultPolicy("team", new BuildNumberPolicy(5, false));
+        policy.setMaxKept(20);
+        policy.setEvaluateAsynchronously(true);
+        final DefaultPolicy moved = policy.withFolder("org/team");
+        assertEquals("org/team", moved.getFolder());
+        final BuildKeeper keeper = moved.toBuildKeeper();
+        assertEquals(20, keeper.getMaxKept());
+        assertTrue(keeper.isEvaluateAsynchronously());
+        assertSame(policy.getPolicy(), keeper.getPolicy());
+    }
+
+    @Test
+    public void testOnlyBuildWrappersAreAppliedAsTheBuildTearsDown() {
+        final BuildKeeperPolicy policy = new BuildNumberPolicy(5, false);
+        assertFalse(new BuildKeeper(policy).isAppliedOnCompletion());
+        final BuildKeeperProperty property = new BuildKeeperProperty(policy);
+        property.setMaxKept(10);
+        final BuildKeeper fromProperty = property.toBuildKeeper();
+        assertTrue(fromProperty.isAppliedOnCompletion());
+        assertEquals(10, fromProperty.getMaxKept());
+        final BuildKeeper fromStep = new BuildKeeperAction(policy, 3).toBuildKeeper();
+        assertTrue(fromStep.isAppliedOnCompletion());
+        assertEquals(3, fromStep.getMaxKept());
+        assertSame(policy, fromStep.getPolicy());
+    }
+
+}
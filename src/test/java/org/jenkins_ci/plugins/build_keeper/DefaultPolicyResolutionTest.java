@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.FreeStyleProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DefaultPolicyResolutionTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void testChangingTheJobsOwnKeeperIsFollowed() throws Exception {
+        final BuildKeeperPolicy fallback = new BuildNumberPolicy(5, false);
+        DefaultPolicies.get().setDefaults(Arrays.asList(new DefaultPolicy("", fallback)));
+        final FreeStyleProject project = j.createFreeStyleProject();
+        assertSame(fallback, DefaultPolicies.get().getKeeper(project).getPolicy());
+        final BuildKeeper own = new BuildKeeper(new BuildNumberPolicy(10, false));
+        project.getBuildWrappersList().add(own);
+        assertSame(own, DefaultPolicies.get().getKeeper(project));
+        project.getBuildWrappersList().remove(BuildKeeper.class);
+        assertSame(fallback, DefaultPolicies.get().getKeeper(project).getPolicy());
+        final BuildKeeperPolicy property = new KeepSincePolicy(10, false);
+        project.addProperty(new BuildKeeperProperty(property));
+        assertSame(property, DefaultPolicies.get().getKeeper(project).getPolicy());
+        project.removeProperty(BuildKeeperProperty.class);
+        assertSame(fallback, DefaultPolicies.get().getKeeper(project).getPolicy());
+    }
+
+    @Test
+    public void testRenamingAFolderKeepsItsDefault() throws Exception {
+        final BuildKeeperPolicy team = new BuildNumberPolicy(5, false);
+        final MockFolder folder = j.createFolder("team");
+        final FreeStyleProject project = folder.createProject(FreeStyleProject.class, "app");
+        final MockFolder other = j.createFolder("other");
+        final FreeStyleProject outside = other.createProject(FreeStyleProject.class, "app");
+        DefaultPolicies.get().setDefaults(Arrays.asList(new DefaultPolicy("team", team)));
+        assertSame(team, DefaultPolicies.get().getKeeper(project).getPolicy());
+        folder.renameTo("org");
+        assertEquals("org", DefaultPolicies.get().getDefaults().get(0).getFolder());
+        assertSame(team, DefaultPolicies.get().getKeeper(project).getPolicy());
+        assertNull(DefaultPolicies.get().getKeeper(outside));
+    }
+
+    @Test
+    public void testEditingTheDefaultsIsFollowed() throws Exception {
+        final MockFolder folder = j.createFolder("team");
+        final FreeStyleProject project = folder.createProject(FreeStyleProject.class, "app");
+        assertNull(DefaultPolicies.get().getKeeper(project));
+        final BuildKeeperPolicy all = new BuildNumberPolicy(5, false);
+        DefaultPolicies.get().setDefaults(Arrays.asList(new DefaultPolicy("", all)));
+        assertSame(all, DefaultPolicies.get().getKeeper(project).getPolicy());
+        final BuildKeeperPolicy team = new KeepSincePolicy(10, false);
+        DefaultPolicies.get().setDefaults(Arrays.asList(new DefaultPolicy("", all), new DefaultPolicy("team", team)));
+        assertSame(team, DefaultPolicies.get().getKeeper(project).getPolicy());
+        j.configRoundtrip();
+        assertEquals(2, DefaultPolicies.get().getDefaults().size());
+        assertEquals(KeepSincePolicy.class, DefaultPolicies.get().getKeeper(project).getPolicy().getClass());
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DurationOutlierPolicyTest {
+
+    private static final BuildListener LISTENER = null;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testQuantilesAreWithinTheRelativeAccuracy() {
+        final DurationSketch sketch = new DurationSketch();
+        final Random random = new Random(42);
+        final long[] durations = new long[10000];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = 1 + random.nextInt(1000000);
+            sketch.add(durations[i]);
+        }
+        Arrays.sort(durations);
+        for (double quantile : new double[] {0.01, 0.5, 0.99}) {
+            final long exact = durations[(int) Math.floor(quantile * (durations.length - 1))];
+            assertEquals(exact, sketch.getQuantile(quantile), exact * DurationSketch.RELATIVE_ACCURACY);
+        }
+        assertEquals(10000, sketch.getCount());
+    }
+
+    @Test
+    public void testKeepsSlowAndFastBuildsOnceWarmedUp() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final DurationOutlierPolicy policy = new DurationOutlierPolicy(99, 1);
+        apply(history, policy, Result.SUCCESS, 60000);
+        final Random random = new Random(7);
+        for (int i = 0; i < 200; i++)
+            apply(history, policy, Result.SUCCESS, 1000 + random.nextInt(100));
+        final int kept = history.getKeptCount();
+        assertTrue(kept < 10);
+        apply(history, policy, Result.SUCCESS, 5000);
+        apply(history, policy, Result.SUCCESS, 10);
+        apply(history, policy, Result.SUCCESS, 1050);
+        assertEquals(kept + 2, history.getKeptCount());
+        assertTrue(history.isKeepLog(history.size() - 1));
+        assertTrue(history.isKeepLog(history.size() - 2));
+        // too few builds had been seen to judge the first
+        assertTrue(!history.isKeepLog(1));
+    }
+
+    @Test
+    public void testOnlyCountsBuildsThatCompleted() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final DurationOutlierPolicy policy = new DurationOutlierPolicy(90, 0);
+        policy.setMinBuilds(10);
+        for (int i = 0; i < 20; i++)
+            apply(history, policy, Result.SUCCESS, 1000);
+        apply(history, policy, Result.FAILURE, 50000);
+        apply(history, policy, Result.ABORTED, 50000);
+        apply(history, policy, Result.UNSTABLE, 50000);
+        assertArrayEquals(new int[] {23}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testFirstEvaluationSeedsFromTheHistoryInOnePass() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int i = 0; i < 100; i++)
+            add(history, Result.SUCCESS, 1000 + i);
+        final DurationOutlierPolicy policy = new DurationOutlierPolicy(95, 0);
+        policy.apply(history, add(history, Result.SUCCESS, 2000), LISTENER);
+        assertArrayEquals(new int[] {101}, history.getKeptNumbers());
+        assertTrue(history.getAccessCount() <= 100);
+        final long accesses = history.getAccessCount();
+        policy.apply(history, add(history, Result.SUCCESS, 1010), LISTENER);
+        assertEquals(accesses, history.getAccessCount());
+    }
+
+    @Test
+    public void testNewInstanceOfThePolicyFeedsTheSameSketch() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int i = 0; i < 100; i++)
+            add(history, Result.SUCCESS, 1000 + i);
+        new DurationOutlierPolicy(95, 0).apply(history, add(history, Result.SUCCESS, 1050), LISTENER);
+        final long accesses = history.getAccessCount();
+        // as after the job configuration is saved
+        final DurationOutlierPolicy reconfigured = new DurationOutlierPolicy(90, 0);
+        reconfigured.apply(history, add(history, Result.SUCCESS, 1060), LISTENER);
+        reconfigured.apply(history, add(history, Result.SUCCESS, 5000), LISTENER);
+        assertEquals(accesses, history.getAccessCount());
+        assertArrayEquals(new int[] {103}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testSketchIsSavedAndLoaded() throws Exception {
+        final File file = new File(folder.getRoot(), DurationSketch.FILE_NAME);
+        final DurationSketch sketch = new DurationSketch();
+        for (int i = 50; i >= 1; i--)
+            sketch.add(i * 10);
+        sketch.setLast(50);
+        sketch.save(file);
+        final DurationSketch loaded = DurationSketch.load(file);
+        assertEquals(50, loaded.getLast());
+        assertEquals(50, loaded.getCount());
+        for (double quantile : new double[] {0, 0.01, 0.5, 0.99, 1})
+            assertEquals(sketch.getQuantile(quantile), loaded.getQuantile(quantile), 0);
+        assertNull(DurationSketch.load(new File(folder.getRoot(), "missing")));
+    }
+
+    private static void apply(final ArrayBuildHistory history, final DurationOutlierPolicy policy, final Result result,
+                              final long duration) throws Exception {
+        policy.apply(history, add(history, result, duration), LISTENER);
+    }
+
+    private static BuildRecord add(final ArrayBuildHistory history, final Result result, final long duration) {
+        final BuildRecord build = history.add(history.size(), result);
+        history.setDuration(build.getNumber(), duration);
+        return build;
+    }
+
+}
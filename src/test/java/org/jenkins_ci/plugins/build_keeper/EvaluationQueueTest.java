@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EvaluationQueueTest {
+
+    @Test
+    public void testEvaluationsForTheSameKeyRunInOrder() throws Exception {
+        final EvaluationQueue queue = new EvaluationQueue(4, 100);
+        final List<Integer> first = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> second = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 50; i++) {
+            queue.submit("first", new Append(first, i));
+            queue.submit("second", new Append(second, i));
+        }
+        assertTrue(queue.awaitIdle(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, (int) first.get(i));
+            assertEquals(i, (int) second.get(i));
+        }
+        assertEquals(100, queue.getEvaluatedCount());
+        assertEquals(0, queue.getQueueDepth());
+        queue.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testQueueDepthCountsWaitingEvaluations() throws Exception {
+        final EvaluationQueue queue = new EvaluationQueue(1, 10);
+        final CountDownLatch release = new CountDownLatch(1);
+        queue.submit("job", new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    throw new RuntimeException(ie);
+                }
+            }
+        });
+        queue.submit("job", new Append(new ArrayList<Integer>(), 1));
+        assertEquals(2, queue.getQueueDepth());
+        release.countDown();
+        assertTrue(queue.awaitIdle(10, TimeUnit.SECONDS));
+        assertEquals(0, queue.getQueueDepth());
+        queue.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testFailedEvaluationDoesNotStopTheQueue() throws Exception {
+        final EvaluationQueue queue = new EvaluationQueue(1, 10);
+        final List<Integer> evaluated = Collections.synchronizedList(new ArrayList<Integer>());
+        queue.submit("job", new Runnable() {
+            public void run() {
+                throw new IllegalStateException("expected");
+            }
+        });
+        queue.submit("job", new Append(evaluated, 2));
+        assertTrue(queue.awaitIdle(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(2), evaluated);
+        queue.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    private static class Append implements Runnable {
+
+        private final List<Integer> list;
+        private final int value;
+
+        Append(final List<Integer> list, final int value) {
+            this.list = list;
+            this.value = value;
+        }
+
+        public void run() {
+            list.add(value);
+        }
+
+    }
+
+}
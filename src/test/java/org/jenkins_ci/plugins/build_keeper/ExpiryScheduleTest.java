@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiryScheduleTest {
+
+    private static final BuildListener LISTENER = null;
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long START = 20000 * DAY;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReleasesInOrderOnceDue() throws Exception {
+        final RecordingSchedule schedule = new RecordingSchedule(folder.newFolder());
+        schedule.schedule("job", 3, START + 2 * DAY);
+        schedule.schedule("job", 1, START + 5);
+        schedule.schedule("other", 2, START + 10);
+        release(schedule, START);
+        assertEquals(0, schedule.released.size());
+        release(schedule, START + 10);
+        assertEquals(Arrays.asList("job #1", "other #2"), schedule.released);
+        release(schedule, START + DAY);
+        assertEquals(2, schedule.released.size());
+        assertEquals(START + 2 * DAY, schedule.next());
+        release(schedule, START + 3 * DAY);
+        assertEquals(Arrays.asList("job #1", "other #2", "job #3"), schedule.released);
+        assertEquals(Long.MAX_VALUE, schedule.next());
+    }
+
+    @Test
+    public void testLaterDaysAreNotLoadedUntilTheyArrive() throws Exception {
+        final RecordingSchedule schedule = new RecordingSchedule(folder.newFolder());
+        for (int i = 1; i <= 1000; i++)
+            schedule.schedule("job", i, START + i * DAY);
+        release(schedule, START + DAY);
+        assertEquals(1, schedule.released.size());
+        assertEquals(0, schedule.getQueuedCount());
+        assertEquals(START + 2 * DAY, schedule.next());
+    }
+
+    @Test
+    public void testUnreleasedExpiriesSurviveRestart() throws Exception {
+        final File dir = folder.newFolder();
+        final RecordingSchedule before = new RecordingSchedule(dir);
+        before.schedule("job", 1, START + 1);
+        before.schedule("job", 2, START + DAY + 1);
+        before.schedule("job", 3, START + DAY + 2);
+        release(before, START + DAY + 1);
+        assertEquals(Arrays.asList("job #1", "job #2"), before.released);
+        assertFalse(new File(dir, Long.toString(START / DAY)).exists());
+        assertTrue(new File(dir, Long.toString(START / DAY + 1)).exists());
+
+        final RecordingSchedule after = new RecordingSchedule(dir);
+        release(after, START + 2 * DAY);
+        // #2 may be released again after a restart, which does nothing as it is no longer kept
+        assertEquals(Arrays.asList("job #2", "job #3"), after.released);
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void testScheduledAfterTheDayWasLoaded() throws Exception {
+        final RecordingSchedule schedule = new RecordingSchedule(folder.newFolder());
+        schedule.schedule("job", 1, START + 1);
+        release(schedule, START + 1);
+        schedule.schedule("job", 2, START + 5);
+        assertEquals(START + 5, schedule.next());
+        release(schedule, START + 5);
+        assertEquals(Arrays.asList("job #1", "job #2"), schedule.released);
+    }
+
+    @Test
+    public void testPolicyExpiresWhatItKeeps() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final BuildNumberPolicy policy = new BuildNumberPolicy(5, false);
+        policy.setExpireAfterDays(3);
+        for (int i = 1; i <= 10; i++)
+            policy.apply(history, history.add(START + i, Result.SUCCESS), LISTENER);
+        // keeps builds 1 and 6
+        assertEquals(START + 6 + 3 * DAY, history.getExpiry(6));
+        assertEquals(START + 1 + 3 * DAY, history.getExpiry(1));
+        assertEquals(0, history.getExpiry(5));
+    }
+
+    @Test
+    public void testCompositeOnlyExpiresWhatNoPolicyKeepsForGood() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final BuildNumberPolicy everyFifth = new BuildNumberPolicy(5, false);
+        everyFifth.setExpireAfterDays(3);
+        final BuildNumberPolicy everyTenth = new BuildNumberPolicy(10, false);
+        final CompositePolicy policy = new CompositePolicy(Arrays.<BuildKeeperPolicy>asList(everyFifth, everyTenth),
+                CompositePolicy.Operator.OR);
+        for (int i = 1; i <= 10; i++)
+            policy.apply(history, history.add(START + i, Result.SUCCESS), LISTENER);
+        assertTrue(history.isKeepLog(6));
+        assertEquals(START + 6 + 3 * DAY, history.getExpiry(6));
+        assertTrue(history.isKeepLog(1));
+        assertEquals(0, history.getExpiry(1));
+    }
+
+    private static void release(final ExpirySchedule schedule, final long now) {
+        for (ExpirySchedule.Expiry expiry : schedule.due(now)) {
+            ((RecordingSchedule) schedule).released.add(expiry.getJob() + " #" + expiry.getNumber());
+            schedule.done(expiry);
+        }
+    }
+
+    private static class RecordingSchedule extends ExpirySchedule {
+
+        private final List<String> released = new ArrayList<String>();
+
+        RecordingSchedule(final File directory) {
+            super(directory);
+        }
+
+    }
+
+}
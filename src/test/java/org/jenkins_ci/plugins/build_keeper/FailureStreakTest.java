@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FailureStreakTest {
+
+    private static final BuildListener LISTENER = null;
+
+    @Test
+    public void testKeepsFirstOfEachStreakWithoutLookingBack() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final KeepFirstFailedPolicy policy = new KeepFirstFailedPolicy(3);
+        final String results = "SFFSFFFFFSFFF";
+        for (int i = 0; i < results.length(); i++)
+            policy.apply(history, history.add(i, results.charAt(i) == 'F' ? Result.FAILURE : Result.SUCCESS), LISTENER);
+        assertArrayEquals(new int[] {5, 11}, history.getKeptNumbers());
+        assertEquals(2, history.getAccessCount());
+    }
+
+    @Test
+    public void testSeedsFromExistingHistory() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        history.add(1, Result.SUCCESS);
+        history.add(2, Result.FAILURE);
+        history.add(3, Result.FAILURE);
+        final KeepFirstFailedPolicy policy = new KeepFirstFailedPolicy(3);
+        policy.apply(history, history.add(4, Result.FAILURE), LISTENER);
+        policy.apply(history, history.add(5, Result.FAILURE), LISTENER);
+        assertArrayEquals(new int[] {2}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testWaitsForEarlierBuildsToComplete() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final FailureStreak streak = new FailureStreak();
+        assertEquals(0, streak.completed(history, history.add(1, Result.SUCCESS), 2));
+        history.add(2, null);
+        history.add(3, null);
+        assertEquals(0, streak.completed(history, history.setResult(3, Result.FAILURE), 2));
+        assertEquals(0, streak.getLength());
+        assertEquals(2, streak.completed(history, history.setResult(2, Result.FAILURE), 2));
+        assertEquals(2, streak.getLength());
+        assertEquals(2, streak.getFirst());
+    }
+
+    @Test
+    public void testLaterSuccessEndsStreakOnceEarlierFailureCompletes() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final FailureStreak streak = new FailureStreak();
+        assertEquals(0, streak.completed(history, history.add(1, Result.FAILURE), 2));
+        history.add(2, null);
+        assertEquals(0, streak.completed(history, history.add(3, Result.SUCCESS), 2));
+        assertEquals(1, streak.completed(history, history.setResult(2, Result.FAILURE), 2));
+        assertEquals(0, streak.getLength());
+    }
+
+    @Test
+    public void testBuildsNotReportedAreReadFromHistory() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final FailureStreak streak = new FailureStreak();
+        assertEquals(0, streak.completed(history, history.add(1, Result.SUCCESS), 3));
+        history.add(2, Result.FAILURE);
+        history.add(3, Result.FAILURE);
+        assertEquals(2, streak.completed(history, history.add(4, Result.FAILURE), 3));
+    }
+
+}
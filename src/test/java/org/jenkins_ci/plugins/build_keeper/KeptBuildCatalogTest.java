@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class KeptBuildCatalogTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long NOW = 100 * DAY;
+
+    @Test
+    public void testPagesAreNewestFirstWithTheTotal() {
+        final KeptBuildCatalog catalog = new KeptBuildCatalog();
+        for (int number = 1; number <= 25; number++)
+            catalog.add("a", number, number * DAY, "ByDayPolicy");
+        final KeptBuildCatalog.Query query = query();
+        query.start = 20;
+        query.limit = 10;
+        final KeptBuildCatalog.Page page = catalog.query(query, NOW);
+        assertEquals(25, page.getTotal());
+        assertEquals(Arrays.asList("a#5", "a#4", "a#3", "a#2", "a#1"), keys(page));
+        assertEquals("?start=10&limit=10", page.getPreviousPage());
+        assertNull(page.getNextPage());
+    }
+
+    @Test
+    public void testFiltersByJobFolderAndPolicy() {
+        final KeptBuildCatalog catalog = new KeptBuildCatalog();
+        catalog.add("team/app", 1, DAY, "ByDayPolicy");
+        catalog.add("team/lib", 1, 2 * DAY, "ThinningPolicy");
+        catalog.add("team/sub/tool", 1, 3 * DAY, "ByDayPolicy");
+        catalog.add("teamwork", 1, 4 * DAY, "ByDayPolicy");
+        catalog.add("team-other/app", 1, 5 * DAY, "ByDayPolicy");
+        KeptBuildCatalog.Query query = query();
+        query.folder = "team";
+        assertEquals(Arrays.asList("team/sub/tool#1", "team/lib#1", "team/app#1"), keys(catalog.query(query, NOW)));
+        query.policy = "ByDayPolicy";
+        assertEquals(Arrays.asList("team/sub/tool#1", "team/app#1"), keys(catalog.query(query, NOW)));
+        query = query();
+        query.job = "teamwork";
+        assertEquals(Arrays.asList("teamwork#1"), keys(catalog.query(query, NOW)));
+        query = query();
+        query.policy = "ThinningPolicy";
+        assertEquals(Arrays.asList("team/lib#1"), keys(catalog.query(query, NOW)));
+        query.policy = "KeepSincePolicy";
+        assertEquals(0, catalog.query(query, NOW).getTotal());
+    }
+
+    @Test
+    public void testPagesThroughAPolicyOfAFolderAcrossJobs() {
+        final KeptBuildCatalog catalog = new KeptBuildCatalog();
+        for (int number = 1; number <= 10; number++) {
+            catalog.add("team/app", number, (2 * number) * DAY, number % 2 == 0 ? "ByDayPolicy" : "ThinningPolicy");
+            catalog.add("team/lib", number, (2 * number + 1) * DAY, "ByDayPolicy");
+        }
+        final KeptBuildCatalog.Query query = query();
+        query.folder = "team";
+        query.policy = "ByDayPolicy";
+        query.start = 12;
+        query.limit = 5;
+        final KeptBuildCatalog.Page page = catalog.query(query, NOW);
+        assertEquals(15, page.getTotal());
+        assertEquals(Arrays.asList("team/lib#2", "team/app#2", "team/lib#1"), keys(page));
+        query.job = "team/app";
+        query.start = 0;
+        assertEquals(5, catalog.query(query, NOW).getTotal());
+        query.folder = "other";
+        assertEquals(0, catalog.query(query, NOW).getTotal());
+        catalog.remove("team/app", 2);
+        query.folder = null;
+        assertEquals(Arrays.asList("team/app#10", "team/app#8", "team/app#6", "team/app#4"), keys(catalog.query(query, NOW)));
+    }
+
+    @Test
+    public void testFiltersByAge() {
+        final KeptBuildCatalog catalog = new KeptBuildCatalog();
+        for (int day = 0; day < 100; day += 10)
+            catalog.add("a", day + 1, day * DAY, null);
+        final KeptBuildCatalog.Query query = query();
+        query.minAge = 30 * DAY;
+        query.maxAge = 60 * DAY;
+        assertEquals(Arrays.asList("a#71", "a#61", "a#51", "a#41"), keys(catalog.query(query, NOW)));
+        query.minAge = 70 * DAY;
+        assertEquals(0, catalog.query(query, NOW).getTotal());
+    }
+
+    @Test
+    public void testReleasedAndMovedBuilds() {
+        final KeptBuildCatalog catalog = new KeptBuildCatalog();
+        catalog.add("old/a", 1, DAY, "ByDayPolicy");
+        catalog.add("old/a", 2, 2 * DAY, "ByDayPolicy");
+        catalog.add("old/b", 1, 3 * DAY, "ByDayPolicy");
+        catalog.add("other", 1, 4 * DAY, "ByDayPolicy");
+        catalog.remove("old/a", 2);
+        catalog.move("old", "new");
+        assertEquals(Arrays.asList("other#1", "new/b#1", "new/a#1"), keys(catalog.query(query(), NOW)));
+        final KeptBuildCatalog.Query query = query();
+        query.folder = "old";
+        assertEquals(0, catalog.query(query, NOW).getTotal());
+        catalog.removeAll("new/b");
+        assertEquals(2, catalog.size());
+        catalog.add("new/a", 1, DAY, "ThinningPolicy");
+        assertEquals(Arrays.asList("ByDayPolicy", "ThinningPolicy"), catalog.getPolicies());
+        assertEquals(2, catalog.size());
+    }
+
+    @Test
+    public void testEntryUrlHasAJobSegmentPerName() {
+        assertEquals("job/team/job/app/3/", new KeptBuildCatalog.Entry("team/app", 3, 0, null).getUrl());
+    }
+
+    private static KeptBuildCatalog.Query query() {
+        return new KeptBuildCatalog.Query();
+    }
+
+    private static List<String> keys(final KeptBuildCatalog.Page page) {
+        final List<String> keys = new ArrayList<String>();
+        for (KeptBuildCatalog.Entry entry : page.getBuilds())
+            keys.add(entry.getKey());
+        return keys;
+    }
+
+}
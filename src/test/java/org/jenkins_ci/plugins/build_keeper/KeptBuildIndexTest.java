@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeptBuildIndexTest {
+
+    @Test
+    public void testEmptyIndexHasNothingKept() {
+        final KeptBuildIndex index = new KeptBuildIndex();
+        assertEquals(0, index.getLastKeptNumber());
+        assertFalse(index.isKeptBetween(1, 10));
+        assertFalse(index.isKeptSince(0, 10));
+    }
+
+    @Test
+    public void testKeptBetweenIsExclusiveOfUpperBound() {
+        final KeptBuildIndex index = new KeptBuildIndex();
+        index.update(4, 400, true);
+        assertTrue(index.isKeptBetween(2, 5));
+        assertTrue(index.isKeptBetween(4, 5));
+        assertFalse(index.isKeptBetween(5, 7));
+        assertFalse(index.isKeptBetween(1, 4));
+    }
+
+    @Test
+    public void testLooksBelowBuildsKeptOutOfOrder() {
+        final KeptBuildIndex index = new KeptBuildIndex();
+        index.update(10, 1000, true);
+        index.update(3, 300, true);
+        index.update(7, 700, true);
+        assertEquals(10, index.getLastKeptNumber());
+        assertEquals(3, index.size());
+        assertTrue(index.isKeptBetween(6, 9));
+        assertFalse(index.isKeptBetween(8, 10));
+        assertTrue(index.isKeptSince(700, 9));
+        assertFalse(index.isKeptSince(701, 9));
+    }
+
+    @Test
+    public void testLooksAboveForBuildsThatFinishedFirst() {
+        final KeptBuildIndex index = new KeptBuildIndex();
+        index.update(3, 300, true);
+        index.update(7, 700, true);
+        assertTrue(index.isKeptAfter(5, 7));
+        assertFalse(index.isKeptAfter(5, 6));
+        assertFalse(index.isKeptAfter(7, 20));
+        assertTrue(index.isKeptAfter(3, 7));
+        assertEquals(700, index.getNextKeptTimestamp(3));
+        assertEquals(300, index.getNextKeptTimestamp(0));
+        assertEquals(Long.MAX_VALUE, index.getNextKeptTimestamp(7));
+    }
+
+    @Test
+    public void testReleasedBuildIsRemoved() {
+        final KeptBuildIndex index = new KeptBuildIndex();
+        index.update(1, 100, true);
+        index.update(2, 200, true);
+        index.update(2, 200, false);
+        assertEquals(1, index.getLastKeptNumber());
+        assertEquals(100, index.getLastKeptTimestamp());
+        assertFalse(index.isKept(2));
+        index.update(5, 500, false);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        final KeptBuildIndex index = new KeptBuildIndex();
+        for (int i = 100; i > 0; i--)
+            index.update(i * 2, i, true);
+        assertEquals(100, index.size());
+        assertEquals(200, index.getLastKeptNumber());
+        assertTrue(index.isKept(50));
+        assertFalse(index.isKept(51));
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import hudson.model.Environment;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load test run with mvn -Pload test. Creates jobs with deep histories written straight to disk, then completes the
+ * newest builds of every job, round robin, through the build wrapper's tearDown, measuring the p50 and p99 latency of
+ * tearDown and the builds loaded per decision. Fails if any regresses past load-baselines.properties by more than the
+ * tolerance, or has no baseline at all. The measurements are written to target/load-report.properties in the same
+ * format; -Dload.record=true writes them over the baselines instead, to be committed after a deliberate change.
+ *
+ * -Dload.jobs, -Dload.builds and -Dload.completions set the jobs per policy, builds per job and builds completed per
+ * job; -Dload.latencyTolerance and -Dload.accessTolerance the fraction over a baseline that is allowed.
+ */
+public class LoadTestRunner {
+
+    private static final int JOBS = Integer.getInteger("load.jobs", 100);
+    private static final int BUILDS = Integer.getInteger("load.builds", 500);
+    private static final int COMPLETIONS = Math.max(2, Integer.getInteger("load.completions", 10));
+    private static final double LATENCY_TOLERANCE = Double.parseDouble(System.getProperty("load.latencyTolerance", "1.0"));
+    private static final double ACCESS_TOLERANCE = Double.parseDouble(System.getProperty("load.accessTolerance", "0.1"));
+    private static final boolean RECORD = Boolean.getBoolean("load.record");
+    private static final String BASELINES = "src/test/resources/org/jenkins_ci/plugins/build_keeper/load-baselines.properties";
+    private static final long HOUR = 60L * 60 * 1000;
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void runLoadTest() throws Exception {
+        final Map<String, BuildKeeperPolicy> policies = new LinkedHashMap<String, BuildKeeperPolicy>();
+        policies.put("buildNumberPolicy", new BuildNumberPolicy(10, false));
+        policies.put("keepSincePolicy", new KeepSincePolicy(10, false));
+        policies.put("byDayPolicy", new ByDayPolicy(1));
+        policies.put("keepFirstFailedPolicy", new KeepFirstFailedPolicy(3));
+        policies.put("compositePolicy", new CompositePolicy(Arrays.<BuildKeeperPolicy>asList(
+                new ByDayPolicy(1), new KeepFirstFailedPolicy(3)), CompositePolicy.Operator.OR));
+        final Properties baselines = new Properties();
+        final InputStream in = getClass().getResourceAsStream("load-baselines.properties");
+        if (in != null) {
+            try {
+                baselines.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        final Properties report = new Properties();
+        final List<String> regressions = new ArrayList<String>();
+        for (Map.Entry<String, BuildKeeperPolicy> policy : policies.entrySet()) {
+            final long[] measured = measure(policy.getKey(), policy.getValue());
+            check(policy.getKey() + ".p50Micros", measured[0], LATENCY_TOLERANCE, baselines, report, regressions);
+            check(policy.getKey() + ".p99Micros", measured[1], LATENCY_TOLERANCE, baselines, report, regressions);
+            check(policy.getKey() + ".accessesPerDecision", measured[2], ACCESS_TOLERANCE, baselines, report, regressions);
+        }
+        final File target = new File("target");
+        if (target.isDirectory() || target.mkdirs()) {
+            final OutputStream out = new FileOutputStream(new File(target, "load-report.properties"));
+            try {
+                report.store(out, JOBS + " jobs per policy, " + BUILDS + " builds per job, " + COMPLETIONS + " completions per job");
+            } finally {
+                out.close();
+            }
+        }
+        if (RECORD) {
+            record(report);
+            return;
+        }
+        assertTrue("Regressed past baselines: " + regressions, regressions.isEmpty());
+    }
+
+    /**
+     * Replace the entries of the baselines file, keeping its comments.
+     */
+    private static void record(final Properties report) throws IOException {
+        final File file = new File(BASELINES);
+        final StringBuilder text = new StringBuilder();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty() || line.startsWith("#")) text.append(line).append('\n');
+        }
+        for (String key : new TreeSet<String>(report.stringPropertyNames()))
+            text.append(key).append('=').append(report.getProperty(key)).append('\n');
+        Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return p50 and p99 tearDown latency in microseconds, and builds loaded per decision in hundredths
+     */
+    private long[] measure(final String name, final BuildKeeperPolicy policy) throws Exception {
+        final Random random = new Random(name.hashCode());
+        final List<FreeStyleProject> jobs = new ArrayList<FreeStyleProject>();
+        final List<BuildKeeper> keepers = new ArrayList<BuildKeeper>();
+        for (int i = 0; i < JOBS; i++) {
+            final FreeStyleProject job = j.createFreeStyleProject(name + "-" + i);
+            final BuildKeeper keeper = new BuildKeeper(policy);
+            job.getBuildWrappersList().add(keeper);
+            writeHistory(job, random);
+            job.onLoad(job.getParent(), job.getName());
+            jobs.add(job);
+            keepers.add(keeper);
+        }
+        final Launcher launcher = j.createLocalLauncher();
+        final BuildListener listener = EvaluationQueue.listener();
+        final long[] latencies = new long[JOBS * (COMPLETIONS - 1)];
+        final long accessesBefore = getAccesses();
+        int measured = 0;
+        for (int completion = 0; completion < COMPLETIONS; completion++) {
+            for (int i = 0; i < JOBS; i++) {
+                final FreeStyleBuild build = jobs.get(i).getBuildByNumber(BUILDS - COMPLETIONS + completion + 1);
+                final Environment environment = keepers.get(i).setUp(build, launcher, listener);
+                final long start = System.nanoTime();
+                environment.tearDown(build, listener);
+                // the first completion of each job warms its index, which only happens once per job
+                if (completion > 0) latencies[measured++] = (System.nanoTime() - start) / 1000;
+            }
+        }
+        final long accesses = getAccesses() - accessesBefore;
+        Arrays.sort(latencies);
+        return new long[] {latencies[latencies.length / 2], latencies[latencies.length * 99 / 100],
+                           accesses * 100 / (JOBS * COMPLETIONS)};
+    }
+
+    private static void writeHistory(final FreeStyleProject job, final Random random) throws IOException {
+        final long first = System.currentTimeMillis() - BUILDS * HOUR;
+        for (int number = 1; number <= BUILDS; number++) {
+            final File dir = new File(job.getBuildDir(), Integer.toString(number));
+            if (!dir.mkdirs()) throw new IOException("Unable to create " + dir);
+            final String result = random.nextDouble() < 0.2 ? "FAILURE" : "SUCCESS";
+            final String xml = "<?xml version='1.1' encoding='UTF-8'?>\n<build>\n"
+                    + "  <timestamp>" + (first + number * HOUR) + "</timestamp>\n"
+                    + "  <startTime>" + (first + number * HOUR) + "</startTime>\n"
+                    + "  <result>" + result + "</result>\n"
+                    + "  <duration>1000</duration>\n"
+                    + "  <keepLog>" + (number % 100 == 1) + "</keepLog>\n"
+                    + "</build>\n";
+            Files.write(new File(dir, "build.xml").toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        }
+        job.updateNextBuildNumber(BUILDS + 1);
+    }
+
+    private static long getAccesses() {
+        long accesses = 0;
+        for (PolicyMetrics.PolicyStats stats : PolicyMetrics.get().getPolicies())
+            accesses += stats.getAccesses();
+        return accesses;
+    }
+
+    private static void check(final String key, final long value, final double tolerance, final Properties baselines,
+                              final Properties report, final List<String> regressions) {
+        report.setProperty(key, Long.toString(value));
+        final String baseline = baselines.getProperty(key);
+        if (baseline == null) {
+            regressions.add(key + " has no baseline");
+            return;
+        }
+        final long limit = (long) (Long.parseLong(baseline.trim()) * (1 + tolerance));
+        if (value > limit) regressions.add(key + " " + value + " > " + limit);
+    }
+
+}
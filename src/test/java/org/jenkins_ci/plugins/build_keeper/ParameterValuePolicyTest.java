@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ParameterValuePolicyTest {
+
+    private static final BuildListener LISTENER = null;
+
+    @Test
+    public void testKeepsLatestBuildForEachValueAndReleasesThePrevious() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ParameterValuePolicy policy = new ParameterValuePolicy("ENV");
+        for (String env : new String[] {"dev", "prod", "dev", "test", "prod", "dev"})
+            apply(history, policy, Result.SUCCESS, "ENV", env);
+        assertArrayEquals(new int[] {4, 5, 6}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testCombinesTheValuesOfEachParameter() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ParameterValuePolicy policy = new ParameterValuePolicy("ENV, BRANCH");
+        apply(history, policy, Result.SUCCESS, "ENV", "dev", "BRANCH", "main");
+        apply(history, policy, Result.SUCCESS, "ENV", "dev", "BRANCH", "fix");
+        apply(history, policy, Result.SUCCESS, "ENV", "dev");
+        apply(history, policy, Result.SUCCESS, "ENV", "dev", "BRANCH", "main");
+        assertArrayEquals(new int[] {2, 3, 4}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testOnlyKeepsSuccessfulBuilds() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ParameterValuePolicy policy = new ParameterValuePolicy("ENV");
+        apply(history, policy, Result.SUCCESS, "ENV", "dev");
+        apply(history, policy, Result.FAILURE, "ENV", "dev");
+        apply(history, policy, Result.UNSTABLE, "ENV", "dev");
+        assertArrayEquals(new int[] {1}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testOlderBuildFinishingLaterDoesNotReplaceANewerOne() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ParameterValuePolicy policy = new ParameterValuePolicy("ENV");
+        final BuildRecord older = add(history, Result.SUCCESS, "ENV", "dev");
+        policy.apply(history, add(history, Result.SUCCESS, "ENV", "dev"), LISTENER);
+        policy.apply(history, older, LISTENER);
+        assertArrayEquals(new int[] {2}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testDoesNotReleaseBuildsKeptByAUser() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ParameterValuePolicy policy = new ParameterValuePolicy("ENV");
+        history.add(0, Result.SUCCESS, true);
+        history.setParameter(1, "ENV", "dev");
+        apply(history, policy, Result.SUCCESS, "ENV", "dev");
+        apply(history, policy, Result.SUCCESS, "ENV", "dev");
+        assertArrayEquals(new int[] {1, 3}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testIndexIsRebuiltFromTheBuildsItKept() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        apply(history, new ParameterValuePolicy("ENV"), Result.SUCCESS, "ENV", "dev");
+        apply(history, new ParameterValuePolicy("ENV"), Result.SUCCESS, "ENV", "prod");
+        // kept by another policy, so not for the parameter value policy to release
+        new BuildNumberPolicy(1, false).apply(history, add(history, Result.SUCCESS, "ENV", "dev"), LISTENER);
+        // a different set of names rebuilds the index
+        final ParameterIndex index = ParameterIndex.of(history, Arrays.asList("ENV", "BRANCH"));
+        assertEquals(2, index.size());
+        final ParameterValuePolicy policy = new ParameterValuePolicy("ENV");
+        apply(history, policy, Result.SUCCESS, "ENV", "dev");
+        assertArrayEquals(new int[] {2, 3, 4}, history.getKeptNumbers());
+        assertEquals(2, ParameterIndex.of(history, policy.getNames()).size());
+    }
+
+    private static void apply(final ArrayBuildHistory history, final ParameterValuePolicy policy, final Result result,
+                              final String... parameters) throws Exception {
+        policy.apply(history, add(history, result, parameters), LISTENER);
+    }
+
+    private static BuildRecord add(final ArrayBuildHistory history, final Result result, final String... parameters) {
+        final BuildRecord build = history.add(history.size(), result);
+        for (int i = 0; i < parameters.length; i += 2)
+            history.setParameter(build.getNumber(), parameters[i], parameters[i + 1]);
+        return build;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PeriodCalendarTest {
+
+    private static final BuildListener LISTENER = null;
+    private static final String[] ZONES = {"UTC", "Europe/London", "America/New_York", "Asia/Kolkata",
+                                           "America/Sao_Paulo", "Australia/Lord_Howe", "Pacific/Apia"};
+
+    @Test
+    public void testAgreesWithJavaTime() throws Exception {
+        final Random random = new Random(42);
+        for (String id : ZONES) {
+            final ZoneId zone = ZoneId.of(id);
+            final PeriodCalendar calendar = new PeriodCalendar(zone);
+            long timestamp = 946684800000L;
+            for (int i = 0; i < 20000; i++) {
+                timestamp += random.nextInt((int) (PeriodCalendar.DAY / 3));
+                final ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), zone);
+                final int periods = 1 + random.nextInt(3);
+                final ZonedDateTime day = time.toLocalDate().minusDays(periods - 1).atStartOfDay(zone);
+                assertEquals(id + " " + time, millis(day), calendar.getStart(PeriodCalendar.Unit.DAYS, timestamp, periods));
+                final ZonedDateTime week = time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                        .minusWeeks(periods - 1).atStartOfDay(zone);
+                assertEquals(id + " " + time, millis(week), calendar.getStart(PeriodCalendar.Unit.WEEKS, timestamp, periods));
+                final ZonedDateTime month = time.toLocalDate().withDayOfMonth(1).minusMonths(periods - 1).atStartOfDay(zone);
+                assertEquals(id + " " + time, millis(month), calendar.getStart(PeriodCalendar.Unit.MONTHS, timestamp, periods));
+                assertEquals(time.getYear() * 12L + time.getMonthValue() - 1, calendar.toEpochMonth(timestamp));
+            }
+        }
+    }
+
+    @Test
+    public void testHoursFollowTheOffset() throws Exception {
+        final PeriodCalendar kolkata = new PeriodCalendar(ZoneId.of("Asia/Kolkata"));
+        final long timestamp = millis(LocalDateTime.of(2020, 3, 1, 10, 45).atZone(ZoneId.of("Asia/Kolkata")));
+        assertEquals(timestamp - 45 * 60 * 1000, kolkata.getStart(PeriodCalendar.Unit.HOURS, timestamp, 1));
+        assertEquals(timestamp - 45 * 60 * 1000 - 2 * PeriodCalendar.HOUR, kolkata.getStart(PeriodCalendar.Unit.HOURS, timestamp, 3));
+        // the hour repeated when the clocks go back is two separate hours
+        final ZoneId london = ZoneId.of("Europe/London");
+        final ZonedDateTime first = LocalDateTime.of(2020, 10, 25, 1, 30).atZone(london).withEarlierOffsetAtOverlap();
+        final ZonedDateTime second = first.withLaterOffsetAtOverlap();
+        final PeriodCalendar calendar = new PeriodCalendar(london);
+        assertEquals(millis(first.truncatedTo(ChronoUnit.HOURS)), calendar.getStart(PeriodCalendar.Unit.HOURS, millis(first), 1));
+        assertEquals(millis(second.truncatedTo(ChronoUnit.HOURS)), calendar.getStart(PeriodCalendar.Unit.HOURS, millis(second), 1));
+    }
+
+    @Test
+    public void testDayStartsAfterAGapAtMidnight() throws Exception {
+        // the clocks went forward from midnight to 01:00 on 4 November 2018 in Sao Paulo
+        final ZoneId zone = ZoneId.of("America/Sao_Paulo");
+        final PeriodCalendar calendar = new PeriodCalendar(zone);
+        final long noon = millis(LocalDateTime.of(2018, 11, 4, 12, 0).atZone(zone));
+        assertEquals(millis(LocalDateTime.of(2018, 11, 4, 1, 0).atZone(zone)), calendar.getStart(PeriodCalendar.Unit.DAYS, noon, 1));
+    }
+
+    @Test
+    public void testPolicyKeepsOneBuildPerLocalDay() throws Exception {
+        final ZoneId zone = ZoneId.of("America/New_York");
+        final ByDayPolicy policy = new ByDayPolicy(1);
+        policy.setTimeZone(zone.getId());
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        // 23:00 and 01:00 local are on different days, although both are on the same day in UTC
+        apply(policy, history, LocalDateTime.of(2021, 6, 1, 22, 0).atZone(zone));
+        apply(policy, history, LocalDateTime.of(2021, 6, 1, 23, 0).atZone(zone));
+        apply(policy, history, LocalDateTime.of(2021, 6, 2, 1, 0).atZone(zone));
+        assertTrue(history.isKeepLog(1));
+        assertFalse(history.isKeepLog(2));
+        assertTrue(history.isKeepLog(3));
+    }
+
+    @Test
+    public void testPolicyKeepsOneBuildPerWeek() throws Exception {
+        final ZoneId zone = ZoneId.of("UTC");
+        final ByDayPolicy policy = new ByDayPolicy(1);
+        policy.setTimeZone(zone.getId());
+        policy.setUnit(PeriodCalendar.Unit.WEEKS);
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        // 5 June 2021 was a Saturday
+        apply(policy, history, LocalDateTime.of(2021, 6, 5, 12, 0).atZone(zone));
+        apply(policy, history, LocalDateTime.of(2021, 6, 6, 12, 0).atZone(zone));
+        apply(policy, history, LocalDateTime.of(2021, 6, 7, 0, 0).atZone(zone));
+        assertTrue(history.isKeepLog(1));
+        assertFalse(history.isKeepLog(2));
+        assertTrue(history.isKeepLog(3));
+    }
+
+    private static void apply(final ByDayPolicy policy, final ArrayBuildHistory history, final ZonedDateTime time) throws Exception {
+        policy.apply(history, history.add(millis(time), Result.SUCCESS), LISTENER);
+    }
+
+    private static long millis(final ZonedDateTime time) {
+        return time.toInstant().toEpochMilli();
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Result;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PipelineBuildKeeperTest {
+
+    private static final String FAIL_AFTER_FIRST = "if (currentBuild.number > 1) { currentBuild.result = 'FAILURE' }\n";
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void testStepKeepsTheFirstFailedBuild() throws Exception {
+        final WorkflowJob project = j.createProject(WorkflowJob.class, "step");
+        project.setDefinition(new CpsFlowDefinition(
+                "buildKeeper policy: [$class: 'KeepFirstFailedPolicy', numberOfFails: 1]\n" + FAIL_AFTER_FIRST, true));
+        final WorkflowRun passed = j.buildAndAssertSuccess(project);
+        final WorkflowRun firstFailed = j.assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0));
+        final WorkflowRun failed = j.assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0));
+        assertFalse(passed.isKeepLog());
+        assertTrue(firstFailed.isKeepLog());
+        assertFalse(failed.isKeepLog());
+        assertSharedPolicy(project, firstFailed.getAction(BuildKeeperAction.class).getPolicy(),
+                           failed.getAction(BuildKeeperAction.class).getPolicy());
+    }
+
+    @Test
+    public void testPropertyKeepsTheFirstFailedBuild() throws Exception {
+        final WorkflowJob project = j.createProject(WorkflowJob.class, "property");
+        project.addProperty(new BuildKeeperProperty(new KeepFirstFailedPolicy(1)));
+        project.setDefinition(new CpsFlowDefinition(FAIL_AFTER_FIRST, true));
+        final WorkflowRun passed = j.buildAndAssertSuccess(project);
+        final WorkflowRun firstFailed = j.assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0));
+        final WorkflowRun failed = j.assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0));
+        assertFalse(passed.isKeepLog());
+        assertTrue(firstFailed.isKeepLog());
+        assertFalse(failed.isKeepLog());
+    }
+
+    /**
+     * Each build deserializes its own copy of the step's policy, but they are applied through one instance.
+     */
+    private static void assertSharedPolicy(final WorkflowJob project, final BuildKeeperPolicy first, final BuildKeeperPolicy second) {
+        assertNotSame(first, second);
+        final BuildKeeperPolicy shared = BuildKeeper.shared(project, second);
+        assertNotSame(second, shared);
+        assertSame(shared, BuildKeeper.shared(project, new KeepFirstFailedPolicy(1)));
+        assertNotSame(shared, BuildKeeper.shared(project, new KeepFirstFailedPolicy(2)));
+    }
+
+}
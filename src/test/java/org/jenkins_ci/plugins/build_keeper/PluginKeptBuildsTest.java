@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PluginKeptBuildsTest {
+
+    private static final BuildListener LISTENER = null;
+
+    @Test
+    public void testOldestBuildsKeptByThePluginAreReleased() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final BuildNumberPolicy policy = new BuildNumberPolicy(2, false);
+        for (int number = 1; number <= 20; number++) {
+            policy.apply(history, history.add(number, Result.SUCCESS, number == 3), LISTENER);
+            history.getPluginKeptBuilds().release(history, 3);
+        }
+        assertArrayEquals(new int[] {3, 15, 17, 19}, history.getKeptNumbers());
+        assertEquals(3, history.getPluginKeptBuilds().size());
+    }
+
+    @Test
+    public void testBuildsKeptByAUserAreNeverReleased() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int number = 1; number <= 5; number++)
+            history.add(number, Result.SUCCESS, true);
+        history.getPluginKeptBuilds().release(history, 1);
+        assertEquals(5, history.getKeptCount());
+        assertEquals(0, history.getAccessCount());
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Cost of applying each policy to the newest build of a generated history, once it has seen the build before it. Each
+ * invocation starts from the generated history and fresh policies, so no invocation sees the keeps of the last.
+ */
+public class PolicyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class History {
+
+        @Param({"1000", "100000", "1000000"})
+        public int builds;
+
+        @Param({"0.1", "0.5"})
+        public double failureRate;
+
+        @Param({"48"})
+        public int buildsPerDay;
+
+        @Param({"false", "true"})
+        public boolean bursty;
+
+        @Param({"100"})
+        public int keepEvery;
+
+        ArrayBuildHistory history;
+        BuildRecord build;
+        BitSet generated;
+        final BuildListener listener = EvaluationQueue.listener();
+
+        BuildNumberPolicy buildNumberPolicy;
+        KeepSincePolicy keepSincePolicy;
+        ByDayPolicy byDayPolicy;
+        KeepFirstFailedPolicy keepFirstFailedPolicy;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            history = SyntheticHistory.generate(builds, failureRate, buildsPerDay, bursty, keepEvery);
+            build = history.getLastBuild();
+            generated = new BitSet();
+            for (int number : history.getKeptNumbers())
+                generated.set(number);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() throws IOException {
+            for (int number : history.getKeptNumbers()) {
+                if (!generated.get(number)) history.keepLog(history.getBuild(number), false);
+            }
+            buildNumberPolicy = new BuildNumberPolicy(100, false);
+            keepSincePolicy = new KeepSincePolicy(100, false);
+            byDayPolicy = new ByDayPolicy(7);
+            keepFirstFailedPolicy = new KeepFirstFailedPolicy(3);
+            final BuildRecord previous = history.getPreviousBuild(build);
+            for (BuildKeeperPolicy policy : new BuildKeeperPolicy[] {buildNumberPolicy, keepSincePolicy, byDayPolicy, keepFirstFailedPolicy})
+                policy.apply(history, previous, listener);
+        }
+
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Accesses {
+
+        public long previousBuilds;
+
+    }
+
+    @Benchmark
+    public void buildNumberPolicy(final History history, final Accesses accesses) throws IOException {
+        apply(history.buildNumberPolicy, history, accesses);
+    }
+
+    @Benchmark
+    public void keepSincePolicy(final History history, final Accesses accesses) throws IOException {
+        apply(history.keepSincePolicy, history, accesses);
+    }
+
+    @Benchmark
+    public void byDayPolicy(final History history, final Accesses accesses) throws IOException {
+        apply(history.byDayPolicy, history, accesses);
+    }
+
+    @Benchmark
+    public void keepFirstFailedPolicy(final History history, final Accesses accesses) throws IOException {
+        apply(history.keepFirstFailedPolicy, history, accesses);
+    }
+
+    private static void apply(final BuildKeeperPolicy policy, final History history, final Accesses accesses) throws IOException {
+        final long before = history.history.getAccessCount();
+        policy.apply(history.history, history.build, history.listener);
+        accesses.previousBuilds += history.history.getAccessCount() - before;
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PolicyMetricsTest {
+
+    @Test
+    public void testAccessesAreBucketedByUpperBound() {
+        assertEquals(0, PolicyMetrics.bucket(0));
+        assertEquals(1, PolicyMetrics.bucket(1));
+        assertEquals(3, PolicyMetrics.bucket(3));
+        assertEquals(3, PolicyMetrics.bucket(4));
+        assertEquals(PolicyMetrics.ACCESS_BUCKETS.length - 1, PolicyMetrics.bucket(1024));
+        assertEquals(PolicyMetrics.ACCESS_BUCKETS.length, PolicyMetrics.bucket(1025));
+    }
+
+    @Test
+    public void testDecisionsAreCountedByPolicy() {
+        final PolicyMetrics metrics = new PolicyMetrics();
+        metrics.record("KeepSincePolicy", "a", 2000000, 0, true, false);
+        metrics.record("KeepSincePolicy", "a", 4000000, 3, false, false);
+        metrics.record("KeepSincePolicy", "b", 1000000, 5000, false, true);
+        metrics.record("ByDayPolicy", "b", 1000000, 1, false, false);
+        final List<PolicyMetrics.PolicyStats> policies = metrics.getPolicies();
+        assertEquals("ByDayPolicy", policies.get(0).getPolicy());
+        final PolicyMetrics.PolicyStats keepSince = policies.get(1);
+        assertEquals(3, keepSince.getApply().getCount());
+        assertEquals(4.0, keepSince.getApply().getMaxMillis(), 0);
+        assertEquals(1, keepSince.getKept());
+        assertEquals(1, keepSince.getSkipped());
+        assertEquals(1, keepSince.getErrors());
+        final long[] histogram = new long[PolicyMetrics.ACCESS_BUCKETS.length + 1];
+        histogram[0] = 1;
+        histogram[3] = 1;
+        histogram[PolicyMetrics.ACCESS_BUCKETS.length] = 1;
+        assertArrayEquals(histogram, keepSince.getAccessHistogram());
+    }
+
+    @Test
+    public void testKeepOfAnEarlierBuildCountsAsKept() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        history.add(1, Result.SUCCESS);
+        history.add(2, Result.FAILURE);
+        history.add(3, Result.FAILURE);
+        final BuildRecord build = history.getBuild(3);
+        final long before = history.getAccessCount();
+        final PolicyMetrics metrics = new PolicyMetrics();
+        metrics.apply(new KeepFirstFailedPolicy(2), history, build, "job", null);
+        assertArrayEquals(new int[] {2}, history.getKeptNumbers());
+        final PolicyMetrics.PolicyStats stats = metrics.getPolicies().get(0);
+        assertEquals(1, stats.getKept());
+        assertEquals(0, stats.getSkipped());
+        assertEquals(history.getAccessCount() - before, metrics.getHotJobs().get(0).getAccesses());
+    }
+
+    @Test
+    public void testHotJobsAreThoseLoadingMostBuilds() {
+        final PolicyMetrics metrics = new PolicyMetrics();
+        for (int i = 0; i < 30; i++)
+            metrics.record("ByDayPolicy", "job" + i, 1000, i, false, false);
+        final List<PolicyMetrics.JobStats> hot = metrics.getHotJobs();
+        assertEquals(20, hot.size());
+        assertEquals("job29", hot.get(0).getJob());
+        assertEquals(29, hot.get(0).getAccesses());
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PolicySimulatorTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void testSimulatesWithoutChangingTheHistory() throws Exception {
+        final ArrayBuildHistory history = history(100000);
+        final PolicySimulator.Report report = new PolicySimulator(new BuildNumberPolicy(10, false), 0)
+                .simulate(history, 1, history.size(), Long.MAX_VALUE, 1000);
+        assertEquals(100000, report.getBuildCount());
+        assertEquals(10000, report.getKeptCount());
+        assertEquals(1, report.getKeptNumbers()[0]);
+        assertEquals(99991, report.getKeptNumbers()[9999]);
+        assertEquals(10000 * 1000L, report.getEstimatedKeptSize());
+        assertEquals(0, history.getKeptCount());
+    }
+
+    @Test
+    public void testStartsFromBuildsKeptByUsersOnly() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int i = 1; i <= 30; i++)
+            history.add(i * 1000, Result.SUCCESS, i == 5);
+        history.keepLog(history.getBuild(20), true);
+        final PolicySimulator.Report report = new PolicySimulator(new KeepSincePolicy(10, false), 0)
+                .simulate(history, 1, 30, Long.MAX_VALUE, 0);
+        assertEquals(2, report.getCurrentlyKeptCount());
+        assertEquals(1, report.getKeptByUserCount());
+        // #5 kept by a user holds off the policy until #15, and the build the plugin kept before is ignored
+        assertArrayEquals(new int[] {1, 15, 25}, report.getKeptNumbers());
+    }
+
+    @Test
+    public void testReleasesOverTheCap() throws Exception {
+        final ArrayBuildHistory history = history(1000);
+        final PolicySimulator.Report report = new PolicySimulator(new BuildNumberPolicy(10, false), 5)
+                .simulate(history, 1, history.size(), Long.MAX_VALUE, 0);
+        assertArrayEquals(new int[] {951, 961, 971, 981, 991}, report.getKeptNumbers());
+        assertEquals("951, 961, 971, 981, 991", report.getKeptRanges());
+    }
+
+    @Test
+    public void testCountsBuildsThatWouldHaveExpired() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int i = 0; i < 10; i++)
+            history.add(i * DAY, Result.SUCCESS);
+        final BuildNumberPolicy policy = new BuildNumberPolicy(1, false);
+        policy.setExpireAfterDays(3);
+        final PolicySimulator.Report report = new PolicySimulator(policy, 0).simulate(history, 1, 10, 9 * DAY, 0);
+        // kept until 3 days after they started, so #1 to #7 have expired by day 9
+        assertEquals(7, report.getExpiredCount());
+        assertEquals("8-10", report.getKeptRanges());
+    }
+
+    @Test
+    public void testSkipsRunningBuilds() throws Exception {
+        final ArrayBuildHistory history = history(10);
+        history.add(11000, null);
+        final PolicySimulator.Report report = new PolicySimulator(new BuildNumberPolicy(1, false), 0)
+                .simulate(history, 1, 11, Long.MAX_VALUE, 0);
+        assertEquals(11, report.getBuildCount());
+        assertEquals(1, report.getRunningCount());
+        assertEquals(10, report.getKeptCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRefusesPoliciesThatKeepBuildsThemselves() throws Exception {
+        final BuildKeeperPolicy policy = new BuildKeeperPolicy() {
+            @Override
+            public void apply(final AbstractBuild build, final BuildListener listener) { }
+        };
+        assertFalse(policy.isHistoryAware());
+        new PolicySimulator(policy, 0).simulate(history(1), 1, 1, Long.MAX_VALUE, 0);
+    }
+
+    @Test
+    public void testCompositeIsOnlyHistoryAwareIfAllItsPoliciesAre() {
+        final BuildKeeperPolicy keepsItself = new BuildKeeperPolicy() {
+            @Override
+            public void apply(final AbstractBuild build, final BuildListener listener) { }
+        };
+        assertTrue(new CompositePolicy(Arrays.<BuildKeeperPolicy>asList(new BuildNumberPolicy(1, false)), null).isHistoryAware());
+        assertFalse(new CompositePolicy(Arrays.asList(new BuildNumberPolicy(1, false), keepsItself), null).isHistoryAware());
+    }
+
+    @Test
+    public void testRunConditionsAreNotSimulated() throws Exception {
+        final RunConditionPolicy runCondition = new RunConditionPolicy(null, true);
+        assertTrue(runCondition.isHistoryAware());
+        assertFalse(runCondition.isSimulable());
+        final CompositePolicy composite = new CompositePolicy(Arrays.asList(new BuildNumberPolicy(1, false), runCondition), null);
+        assertFalse(composite.isSimulable());
+        try {
+            new PolicySimulator(composite, 0).simulate(history(1), 1, 1, Long.MAX_VALUE, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static ArrayBuildHistory history(final int builds) {
+        final ArrayBuildHistory history = new ArrayBuildHistory(builds);
+        for (int i = 1; i <= builds; i++)
+            history.add(i * 1000L, Result.SUCCESS);
+        return history;
+    }
+
+}
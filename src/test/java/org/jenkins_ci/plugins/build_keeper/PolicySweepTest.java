@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PolicySweepTest {
+
+    @Test
+    public void testDryRunReportsBuildsWithoutKeepingThem() throws Exception {
+        final ArrayBuildHistory history = SyntheticHistory.generate(1000, 0.2, 10, false, 0);
+        final SweepHistory dryRun = new SweepHistory(history, true);
+        new PolicySweep(true).sweep(new KeepSincePolicy(10, true), dryRun, 1, history.size());
+        assertEquals(0, history.getKeptCount());
+
+        final SweepHistory sweep = new SweepHistory(history, false);
+        new PolicySweep(false).sweep(new KeepSincePolicy(10, true), sweep, 1, history.size());
+        assertEquals(dryRun.getKept(), sweep.getKept());
+        assertArrayEquals(history.getKeptNumbers(), toArray(sweep.getKept().toArray(new Integer[0])));
+    }
+
+    @Test
+    public void testBuildsAlreadyKeptAreNotReported() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int number = 1; number <= 10; number++)
+            history.add(number, Result.SUCCESS, number == 1);
+        final SweepHistory sweep = new SweepHistory(history, false);
+        new PolicySweep(false).sweep(new BuildNumberPolicy(3, false), sweep, 1, history.size());
+        assertEquals(Arrays.asList(4, 7, 10), sweep.getKept());
+        assertArrayEquals(new int[] {1, 4, 7, 10}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testSweepStopsAtBuildThatHasNotCompleted() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int number = 1; number <= 10; number++)
+            history.add(number, number == 6 ? null : Result.SUCCESS);
+        final PolicySweep sweep = new PolicySweep(true);
+        sweep.sweep(new BuildNumberPolicy(1, false), new SweepHistory(history, true), 1, history.size());
+        assertEquals(5, sweep.getBuildCount());
+    }
+
+    @Test
+    public void testAbortedSweepEvaluatesNothingMore() throws Exception {
+        final ArrayBuildHistory history = SyntheticHistory.generate(100, 0, 10, false, 0);
+        final PolicySweep sweep = new PolicySweep(true);
+        sweep.abort();
+        sweep.sweep(new BuildNumberPolicy(1, false), new SweepHistory(history, true), 1, history.size());
+        assertEquals(0, sweep.getBuildCount());
+    }
+
+    @Test
+    public void testSweepMatchesDryRunWhenPolicyHasSeenLaterBuilds() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int number = 1; number <= 20; number++) {
+            final boolean failed = ((number >= 5) && (number <= 7)) || ((number >= 15) && (number <= 17));
+            history.add(number, failed ? Result.FAILURE : Result.SUCCESS);
+        }
+        final KeepFirstFailedPolicy policy = new KeepFirstFailedPolicy(3);
+        policy.apply(history, history.getLastBuild(), null);
+
+        final SweepHistory dryRun = new SweepHistory(history, true);
+        new PolicySweep(true).sweep(policy, dryRun, 1, history.size());
+        final SweepHistory sweep = new SweepHistory(history, false);
+        new PolicySweep(false).sweep(policy, sweep, 1, history.size());
+        assertEquals(Arrays.asList(5, 15), dryRun.getKept());
+        assertEquals(dryRun.getKept(), sweep.getKept());
+        assertArrayEquals(new int[] {5, 15}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testBuildsKeptBySweepAreReleasedByLaterCompletions() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int number = 1; number <= 9; number++) {
+            history.add(number, Result.SUCCESS);
+            history.setParameter(number, "ENV", "dev");
+        }
+        final ParameterValuePolicy policy = new ParameterValuePolicy("ENV");
+        new PolicySweep(false).sweep(policy, new SweepHistory(history, false), 1, history.size());
+        assertArrayEquals(new int[] {9}, history.getKeptNumbers());
+        final BuildRecord next = history.add(10, Result.SUCCESS);
+        history.setParameter(10, "ENV", "dev");
+        policy.apply(history, next, null);
+        assertArrayEquals(new int[] {10}, history.getKeptNumbers());
+    }
+
+    private static int[] toArray(final Integer[] numbers) {
+        final int[] array = new int[numbers.length];
+        for (int i = 0; i < numbers.length; i++)
+            array[i] = numbers[i];
+        return array;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class ResultTransitionPolicyTest {
+
+    private static final BuildListener LISTENER = null;
+
+    @Test
+    public void testKeepsEveryChangeOfResult() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ResultTransitionPolicy policy = new ResultTransitionPolicy();
+        for (Result result : new Result[] {Result.SUCCESS, Result.SUCCESS, Result.UNSTABLE, Result.FAILURE, Result.FAILURE,
+                                           Result.SUCCESS, Result.FAILURE, Result.UNSTABLE, Result.SUCCESS})
+            policy.apply(history, history.add(history.size(), result), LISTENER);
+        assertArrayEquals(new int[] {3, 4, 6, 7, 8, 9}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testOnlyKeepsTheTransitionsChosen() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ResultTransitionPolicy policy = new ResultTransitionPolicy();
+        policy.setSuccessToUnstable(false);
+        policy.setUnstableToSuccess(false);
+        policy.setFailureToUnstable(false);
+        for (Result result : new Result[] {Result.SUCCESS, Result.UNSTABLE, Result.SUCCESS, Result.FAILURE, Result.UNSTABLE,
+                                           Result.FAILURE, Result.SUCCESS})
+            policy.apply(history, history.add(history.size(), result), LISTENER);
+        assertArrayEquals(new int[] {4, 6, 7}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testAbortedBuildsArePassedOver() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ResultTransitionPolicy policy = new ResultTransitionPolicy();
+        for (Result result : new Result[] {Result.FAILURE, Result.ABORTED, Result.NOT_BUILT, Result.FAILURE, Result.ABORTED,
+                                           Result.SUCCESS})
+            policy.apply(history, history.add(history.size(), result), LISTENER);
+        assertArrayEquals(new int[] {6}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testBuildsCompletingOutOfOrderAreComparedInNumberOrder() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ResultTransitionPolicy policy = new ResultTransitionPolicy();
+        policy.apply(history, history.add(0, Result.SUCCESS), LISTENER);
+        for (int i = 0; i < 3; i++)
+            history.add(history.size(), null);
+        policy.apply(history, history.setResult(4, Result.FAILURE), LISTENER);
+        policy.apply(history, history.setResult(3, Result.FAILURE), LISTENER);
+        assertArrayEquals(new int[0], history.getKeptNumbers());
+        policy.apply(history, history.setResult(2, Result.SUCCESS), LISTENER);
+        assertArrayEquals(new int[] {3}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testReplacementPolicyTakesOverTheBuildsHeld() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ResultTransitionPolicy policy = new ResultTransitionPolicy();
+        policy.apply(history, history.add(0, Result.SUCCESS), LISTENER);
+        history.add(1, null);
+        policy.apply(history, history.add(2, Result.FAILURE), LISTENER);
+        final ResultTransitionPolicy replacement = new ResultTransitionPolicy();
+        replacement.setUnstableToSuccess(false);
+        replacement.takeOver(policy);
+        replacement.apply(history, history.setResult(2, Result.SUCCESS), LISTENER);
+        assertArrayEquals(new int[] {3}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testEarlierBuildCompletingLastCanMakeBothAChange() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ResultTransitionPolicy policy = new ResultTransitionPolicy();
+        policy.apply(history, history.add(0, Result.SUCCESS), LISTENER);
+        history.add(1, null);
+        policy.apply(history, history.add(2, Result.SUCCESS), LISTENER);
+        policy.apply(history, history.setResult(2, Result.FAILURE), LISTENER);
+        assertArrayEquals(new int[] {2, 3}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testFirstEvaluationComparesWithTheLastCompletedBuild() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        history.add(0, Result.FAILURE);
+        history.add(1, Result.ABORTED);
+        final ResultTransitionPolicy policy = new ResultTransitionPolicy();
+        policy.apply(history, history.add(2, Result.SUCCESS), LISTENER);
+        assertArrayEquals(new int[] {3}, history.getKeptNumbers());
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import org.jenkins_ci.plugins.run_condition.RunCondition;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RunConditionEvaluatorTest {
+
+    @Test
+    public void testOutcomeOfConditionIsReturned() throws Exception {
+        final RunConditionEvaluator evaluator = new RunConditionEvaluator(1, 1);
+        assertTrue(evaluator.evaluate(new Condition(0, true), null, null, 10, false));
+        assertEquals(1, evaluator.getEvaluatedCount());
+    }
+
+    @Test
+    public void testConditionThatDoesNotCompleteIsInterrupted() throws Exception {
+        final RunConditionEvaluator evaluator = new RunConditionEvaluator(1, 1);
+        final Condition hangs = new Condition(60000, true);
+        try {
+            evaluator.evaluate(hangs, null, null, 1, false);
+            fail();
+        } catch (TimeoutException te) {
+            assertTrue(hangs.interrupted.await(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, evaluator.getTimeoutCount());
+        assertEquals(0, evaluator.getEvaluatedCount());
+    }
+
+    @Test
+    public void testFailureOfConditionIsThrown() throws Exception {
+        final RunConditionEvaluator evaluator = new RunConditionEvaluator(1, 1);
+        try {
+            evaluator.evaluate(new Condition(-1, true), null, null, 10, false);
+            fail();
+        } catch (IOException ioe) {
+            assertEquals("broken", ioe.getMessage());
+        }
+    }
+
+    @Test
+    public void testFullPoolRejectsEvaluation() throws Exception {
+        final RunConditionEvaluator evaluator = new RunConditionEvaluator(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    evaluator.evaluate(new Stubborn(release), null, null, 1, false);
+                    fail();
+                } catch (TimeoutException te) {
+                    // the first is still running when the second is queued
+                }
+            }
+            try {
+                evaluator.evaluate(new Condition(0, true), null, null, 1, false);
+                fail();
+            } catch (RejectedExecutionException ree) {
+                assertEquals(1, evaluator.getRejectedCount());
+            }
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static class Condition extends RunCondition {
+
+        private final long sleep;
+        private final boolean outcome;
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        Condition(final long sleep, final boolean outcome) {
+            this.sleep = sleep;
+            this.outcome = outcome;
+        }
+
+        @Override
+        public boolean runPrebuild(final AbstractBuild<?, ?> build, final BuildListener listener) {
+            return true;
+        }
+
+        @Override
+        public boolean runPerform(final AbstractBuild<?, ?> build, final BuildListener listener) throws Exception {
+            if (sleep < 0) throw new IOException("broken");
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException ie) {
+                interrupted.countDown();
+                throw ie;
+            }
+            return outcome;
+        }
+
+    }
+
+    private static class Stubborn extends Condition {
+
+        private final CountDownLatch release;
+
+        Stubborn(final CountDownLatch release) {
+            super(0, true);
+            this.release = release;
+        }
+
+        @Override
+        public boolean runPerform(final AbstractBuild<?, ?> build, final BuildListener listener) {
+            while (true) {
+                try {
+                    release.await();
+                    return true;
+                } catch (InterruptedException ie) {
+                    // ignores being cancelled
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SweepThrottleTest {
+
+    @Test
+    public void testSlowReadsHalveTheBatchAndFastReadsGrowIt() {
+        final SweepThrottle throttle = new SweepThrottle(100, 0, 1000);
+        throttle.read(5000);
+        assertTrue(throttle.isSlow());
+        assertEquals(5000, throttle.getPause());
+        throttle.batchDone();
+        assertEquals(50, throttle.getBatch());
+        throttle.batchDone();
+        assertEquals(25, throttle.getBatch());
+        for (int i = 0; i < 20; i++)
+            throttle.read(100);
+        assertFalse(throttle.isSlow());
+        assertEquals(0, throttle.getPause());
+        throttle.batchDone();
+        assertEquals(35, throttle.getBatch());
+        for (int i = 0; i < 10; i++)
+            throttle.batchDone();
+        assertEquals(100, throttle.getBatch());
+    }
+
+    @Test
+    public void testBatchNeverFallsBelowOne() {
+        final SweepThrottle throttle = new SweepThrottle(4, 0, 1000);
+        throttle.read(1000000);
+        for (int i = 0; i < 5; i++)
+            throttle.batchDone();
+        assertEquals(1, throttle.getBatch());
+    }
+
+    @Test
+    public void testLoadAboveTheLimitStopsTheSweep() {
+        final SweepThrottle throttle = new SweepThrottle(100, 0.75, 1000);
+        assertFalse(throttle.isOverloaded(0.5));
+        assertTrue(throttle.isOverloaded(0.8));
+        assertFalse(throttle.isOverloaded(-1));
+        assertFalse(new SweepThrottle(100, 0, 1000).isOverloaded(10));
+    }
+
+}
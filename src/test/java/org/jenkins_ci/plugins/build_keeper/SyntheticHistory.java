@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.Result;
+
+import java.util.Random;
+
+/**
+ * Generates in memory histories with a given mix of results and spread of start times.
+ */
+class SyntheticHistory {
+
+    static final long DAY = 24L * 60 * 60 * 1000;
+
+    private SyntheticHistory() { }
+
+    static ArrayBuildHistory generate(final int size, final double failureRate, final int buildsPerDay, final boolean bursty,
+                                      final int keepEvery) {
+        final ArrayBuildHistory history = new ArrayBuildHistory(size);
+        final Random random = new Random(size);
+        final long interval = DAY / buildsPerDay;
+        long timestamp = System.currentTimeMillis() - size * interval;
+        for (int number = 1; number <= size; number++) {
+            timestamp += bursty ? (long) (-Math.log(1 - random.nextDouble()) * interval) : interval;
+            final Result result = random.nextDouble() < failureRate ? Result.FAILURE : Result.SUCCESS;
+            history.add(timestamp, result, (keepEvery > 0) && (number % keepEvery == 1));
+        }
+        return history;
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2012 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.jenkins_ci.plugins.build_keeper;
+
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThinningPolicyTest {
+
+    private static final BuildListener LISTENER = null;
+    private static final long HOUR = PeriodCalendar.DAY / 24;
+
+    @Test
+    public void testEachTierKeepsOneBuildPerBucket() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ThinningPolicy policy = new ThinningPolicy(1, false);
+        history.add(0, Result.SUCCESS, true);
+        int keptByPolicy = 0;
+        for (long time = HOUR; time < 400 * PeriodCalendar.DAY; time += HOUR) {
+            policy.apply(history, history.add(time, Result.SUCCESS), LISTENER);
+            keptByPolicy++;
+        }
+        // only the builds released were looked up
+        final long accesses = history.getAccessCount();
+        final long now = history.getLastBuild().getTimestamp();
+        final ThinningIndex index = ThinningIndex.of(history);
+        final int[] kept = history.getKeptNumbers();
+        assertEquals(1, kept[0]);
+        assertArrayEquals(index.getNumbers(), Arrays.copyOfRange(kept, 1, kept.length));
+        for (int i = 1; i < kept.length - 1; i++) {
+            final long timestamp = history.getBuild(kept[i]).getTimestamp();
+            final long next = history.getBuild(kept[i + 1]).getTimestamp();
+            final int tier = tier(now - timestamp);
+            if (tier == tier(now - next))
+                assertFalse(tier > 0 && index.bucket(tier, timestamp) == index.bucket(tier, next));
+        }
+        for (int number = history.size(); history.getBuild(number).getTimestamp() >= now - PeriodCalendar.DAY; number--)
+            assertTrue(history.isKeepLog(number));
+        assertTrue(kept.length <= 1 + 25 + 8 + 14 + 14);
+        assertEquals(keptByPolicy - (kept.length - 1), accesses);
+    }
+
+    @Test
+    public void testDoesNotKeepFailedBuildsIfAskedNotTo() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ThinningPolicy policy = new ThinningPolicy(1, true);
+        policy.apply(history, history.add(HOUR, Result.FAILURE), LISTENER);
+        policy.apply(history, history.add(2 * HOUR, Result.SUCCESS), LISTENER);
+        assertArrayEquals(new int[] {2}, history.getKeptNumbers());
+    }
+
+    @Test
+    public void testOldBuildsReachedLaterAreOnlyKeptIfTheirBucketIsEmpty() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        for (int day = 0; day < 30; day++)
+            history.add(day * PeriodCalendar.DAY + HOUR, Result.SUCCESS);
+        final ThinningPolicy policy = new ThinningPolicy(1, false);
+        policy.apply(history, history.getBuild(30), LISTENER);
+        policy.apply(history, history.getBuild(20), LISTENER);
+        policy.apply(history, history.getBuild(21), LISTENER);
+        assertTrue(history.isKeepLog(20));
+        final ThinningIndex index = ThinningIndex.of(history);
+        assertEquals(index.bucket(ThinningIndex.WEEKLY, history.getBuild(20).getTimestamp())
+                     == index.bucket(ThinningIndex.WEEKLY, history.getBuild(21).getTimestamp()),
+                     !history.isKeepLog(21));
+    }
+
+    @Test
+    public void testKeptBuildsExpire() throws Exception {
+        final ArrayBuildHistory history = new ArrayBuildHistory();
+        final ThinningPolicy policy = new ThinningPolicy(1, false);
+        policy.setExpireAfterDays(3);
+        policy.apply(history, history.add(HOUR, Result.SUCCESS), LISTENER);
+        assertTrue(history.isKeepLog(1));
+        assertEquals(HOUR + 3 * PeriodCalendar.DAY, history.getExpiry(1));
+    }
+
+    private static int tier(final long age) {
+        int tier = 0;
+        while ((tier < ThinningIndex.MONTHLY) && (age > ThinningIndex.boundary(tier + 1, 1))) tier++;
+        return tier;
+    }
+
+}